@@ -0,0 +1,119 @@
+import edu.princeton.cs.algs4.Point2D;
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class BatchScorer {
+
+    // rows scored by one task; small enough that a task's rows and the
+    // packed stumps stay in cache, large enough to amortise the fork
+    public static final int BLOCK_SIZE = 512;
+
+    private static final Metrics.Timer BATCH_TIME = Metrics.global().timer(
+            "predict_batch", "Scoring one batch of raw samples");
+
+    // clustering used to reduce the raw samples
+    private final Clustering clustering;
+
+    // trained stumps
+    private final CompiledEnsemble ensemble;
+
+    // pool the blocks run on
+    private final ForkJoinPool pool;
+
+    // score with an immutable clustering and ensemble on the given pool
+    public BatchScorer(Clustering clustering, CompiledEnsemble ensemble, ForkJoinPool pool) {
+        if (clustering == null || ensemble == null || pool == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        if (ensemble.dimensions() != clustering.clusterCount())
+            throw new IllegalArgumentException("ensemble does not match clustering");
+        this.clustering = clustering;
+        this.ensemble = ensemble;
+        this.pool = pool;
+    }
+
+    // predicted label (0 or 1) of every raw sample
+    public int[] predictAll(int[][] samples) {
+        if (samples == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        long start = System.nanoTime();
+        int[] predictions = new int[samples.length];
+        pool.invoke(new Block(samples, predictions, 0, samples.length));
+        BATCH_TIME.record(System.nanoTime() - start);
+        ChurnModel.PREDICTIONS.add(samples.length);
+        return predictions;
+    }
+
+    // splits a range of rows in halves until it fits in one block
+    private class Block extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[][] samples;
+        private final int[] predictions;
+        private final int lo, hi;
+
+        private Block(int[][] samples, int[] predictions, int lo, int hi) {
+            this.samples = samples;
+            this.predictions = predictions;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected void compute() {
+            if (hi - lo > BLOCK_SIZE) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Block(samples, predictions, lo, mid),
+                          new Block(samples, predictions, mid, hi));
+                return;
+            }
+            // one reduced buffer per block
+            int[] reduced = new int[clustering.clusterCount()];
+            for (int i = lo; i < hi; i++) {
+                clustering.reduceDimensions(samples[i], reduced);
+                predictions[i] = ensemble.predict(reduced);
+            }
+        }
+    }
+
+    // unit testing: score n random samples over m locations with t stumps
+    public static void main(String[] args) {
+        int n = Integer.parseInt(args[0]);
+        int m = Integer.parseInt(args[1]);
+        int k = Integer.parseInt(args[2]);
+        int t = Integer.parseInt(args[3]);
+
+        Random random = new Random(0);
+        Point2D[] locations = new Point2D[m];
+        for (int j = 0; j < m; j++)
+            locations[j] = new Point2D(random.nextDouble(), random.nextDouble());
+        int[][] samples = new int[n][m];
+        int[] labels = new int[n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < m; j++)
+                samples[i][j] = random.nextInt(4);
+            labels[i] = samples[i][0] > 1 ? 1 : 0;
+        }
+
+        BoostingAlgorithm model = new BoostingAlgorithm(samples, labels, locations, k);
+        for (int i = 0; i < t; i++)
+            model.iterate();
+
+        Stopwatch watch = new Stopwatch();
+        int[] sequential = new int[n];
+        for (int i = 0; i < n; i++)
+            sequential[i] = model.predict(samples[i]);
+        StdOut.println("sequential " + watch.elapsedTime());
+
+        watch = new Stopwatch();
+        int[] parallel = model.predictAll(samples);
+        StdOut.println("parallel   " + watch.elapsedTime());
+
+        int mismatches = 0;
+        for (int i = 0; i < n; i++)
+            if (sequential[i] != parallel[i]) mismatches++;
+        StdOut.println("mismatches " + mismatches);
+    }
+}
@@ -0,0 +1,241 @@
+import edu.princeton.cs.algs4.Point2D;
+import edu.princeton.cs.algs4.StdOut;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class Benchmarks {
+
+    // A hand-rolled harness, not JMH; there is no blackhole beyond the
+    // sink below. Each benchmark runs in a JVM of its own, forked with
+    // this one's class path and JVM options, so one benchmark's JIT
+    // profile and heap do not carry into the next (--in-process runs them
+    // all here instead). A benchmark runs a few warm-up iterations, then
+    // measurement iterations of at least ITERATION_NANOS of timed work
+    // each. A benchmark may give a setup step that runs before every call
+    // of its body, outside the timed region, so stateful bodies (a
+    // boosting round grows its model) measure the same work every time.
+    // Around the body only, bytes allocated are read from
+    // com.sun.management.ThreadMXBean.getThreadAllocatedBytes, the counter
+    // the JMH GC profiler reports as gc.alloc.rate.norm, and collections
+    // and collection time from the GarbageCollectorMXBeans. Work done on
+    // other threads (the pool of predictAll) is timed but its allocation
+    // is not counted.
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURE_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 1_000_000_000L;
+
+    private static final List<String> ALL = Arrays.asList(
+            "clustering", "reduce", "fit", "iterate", "iterateTrim", "iterateWeighted",
+            "predict", "predictAll");
+
+    // results are folded in here so the JIT cannot drop the work
+    private static volatile long sink;
+
+    // one benchmark body; returns the number of operations it performed
+    private interface Body {
+        int run();
+    }
+
+    // run body in warm-up and measurement iterations and print one line
+    private static void measure(String name, Body body) {
+        measure(name, null, body);
+    }
+
+    // same as above, running setup (if not null) untimed before each call
+    private static void measure(String name, Runnable setup, Body body) {
+        for (int w = 0; w < WARMUP_ITERATIONS; w++)
+            iteration(setup, body);
+
+        double[] nanosPerOp = new double[MEASURE_ITERATIONS];
+        double bytesPerOp = 0;
+        double bytesPerSecond = 0;
+        double gcPerOp = 0;
+        double gcMillisPerOp = 0;
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            long[] result = iteration(setup, body);
+            nanosPerOp[i] = (double) result[1] / result[0];
+            if (result[2] >= 0) {
+                bytesPerOp += (double) result[2] / result[0] / MEASURE_ITERATIONS;
+                bytesPerSecond += result[2] * 1e9 / result[1] / MEASURE_ITERATIONS;
+            }
+            gcPerOp += (double) result[3] / result[0] / MEASURE_ITERATIONS;
+            gcMillisPerOp += (double) result[4] / result[0] / MEASURE_ITERATIONS;
+        }
+
+        double mean = 0;
+        for (double x : nanosPerOp) mean += x / MEASURE_ITERATIONS;
+        double variance = 0;
+        for (double x : nanosPerOp) variance += (x - mean) * (x - mean) / (MEASURE_ITERATIONS - 1);
+
+        StdOut.printf("%-16s %14.1f ns/op  +- %10.1f  %14.1f B/op  %9.1f MB/s"
+                              + "  %8.4f gc/op  %8.3f gc ms/op%n",
+                      name, mean, Math.sqrt(variance), bytesPerOp, bytesPerSecond / 1e6,
+                      gcPerOp, gcMillisPerOp);
+    }
+
+    // ops, timed nanos, allocated bytes, collections and collection
+    // millis of one iteration; only the calls of body are timed and counted
+    private static long[] iteration(Runnable setup, Body body) {
+        long ops = 0;
+        long elapsed = 0;
+        long allocated = 0;
+        long collections = 0;
+        long collectionMillis = 0;
+        do {
+            if (setup != null) setup.run();
+            long[] gcBefore = collections();
+            long before = Metrics.allocatedBytes();
+            long start = System.nanoTime();
+            ops += body.run();
+            elapsed += System.nanoTime() - start;
+            long after = Metrics.allocatedBytes();
+            long[] gcAfter = collections();
+            allocated = before < 0 || allocated < 0 ? -1 : allocated + after - before;
+            collections += gcAfter[0] - gcBefore[0];
+            collectionMillis += gcAfter[1] - gcBefore[1];
+        } while (elapsed < ITERATION_NANOS);
+        return new long[] { ops, elapsed, allocated, collections, collectionMillis };
+    }
+
+    // collections so far and their total time in millis, over all collectors
+    private static long[] collections() {
+        long count = 0;
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(gc.getCollectionCount(), 0);
+            millis += Math.max(gc.getCollectionTime(), 0);
+        }
+        return new long[] { count, millis };
+    }
+
+    // run benchmark name in a new JVM with this one's class path and options
+    private static void fork(String n, String m, String k, String name) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.addAll(Arrays.asList("Benchmarks", "--fork", n, m, k, name));
+        try {
+            int status = new ProcessBuilder(command).inheritIO().start().waitFor();
+            if (status != 0)
+                StdOut.println(name + " failed with exit status " + status);
+        }
+        catch (IOException e) {
+            StdOut.println(name + " could not be forked: " + e.getMessage());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // usage: java Benchmarks [--in-process] n m k [benchmark ...]
+    // benchmarks: clustering reduce fit iterate iterateTrim iterateWeighted
+    //             predict predictAll
+    public static void main(String[] args) {
+        // --fork marks a forked JVM, which runs its benchmark without the
+        // header; --in-process runs every benchmark in this JVM
+        boolean forked = args[0].equals("--fork");
+        boolean inProcess = forked || args[0].equals("--in-process");
+        if (inProcess) args = Arrays.copyOfRange(args, 1, args.length);
+        int n = Integer.parseInt(args[0]);
+        int m = Integer.parseInt(args[1]);
+        int k = Integer.parseInt(args[2]);
+        List<String> selected = Arrays.asList(args).subList(3, args.length);
+        if (selected.isEmpty()) selected = ALL;
+        if (!forked) StdOut.println("n = " + n + ", m = " + m + ", k = " + k);
+        if (!inProcess) {
+            for (String name : selected)
+                fork(args[0], args[1], args[2], name);
+            return;
+        }
+
+        SyntheticData data = new SyntheticData(n, m, 42);
+        Point2D[] locations = data.getLocations();
+        int[][] input = data.getInput();
+        int[] labels = data.getLabels();
+
+        Clustering clustering = new Clustering(locations, k);
+        int[][] reduced = new int[n][k];
+        clustering.reduceDimensions(input, reduced);
+        int[][] order = WeakLearner.sortColumns(reduced);
+        double[] weights = new double[n];
+        Arrays.fill(weights, 1.0 / n);
+
+        if (selected.contains("clustering"))
+            measure("clustering", () -> {
+                sink += new Clustering(locations, k).clusterOf(0);
+                return 1;
+            });
+
+        if (selected.contains("reduce")) {
+            int[] buffer = new int[k];
+            measure("reduce", () -> {
+                for (int[] row : input) {
+                    clustering.reduceDimensions(row, buffer);
+                    sink += buffer[0];
+                }
+                return n;
+            });
+        }
+
+        if (selected.contains("fit")) {
+            TrainingMatrix matrix = new TrainingMatrix(reduced);
+            measure("fit", () -> {
+                sink += new WeakLearner(matrix, weights, labels, order, false).valuePredictor();
+                return 1;
+            });
+        }
+
+        // each round is the first round of a model built fresh on the
+        // shared reduction before every call, so every call does the same
+        // work
+        BoostingAlgorithm[] fresh = new BoostingAlgorithm[1];
+        Body round = () -> {
+            fresh[0].iterate();
+            return 1;
+        };
+
+        if (selected.contains("iterate"))
+            measure("iterate", () -> {
+                fresh[0] = BoostingAlgorithm.ofReduced(clustering, reduced, labels, 0);
+            }, round);
+
+        if (selected.contains("iterateTrim"))
+            measure("iterateTrim", () -> {
+                fresh[0] = BoostingAlgorithm.ofReduced(clustering, reduced, labels, 0);
+                fresh[0].setSubsampling(RowSampler.TRIM, 0.1, 42);
+            }, round);
+
+        if (selected.contains("iterateWeighted"))
+            measure("iterateWeighted", () -> {
+                fresh[0] = BoostingAlgorithm.ofReduced(clustering, reduced, labels, 0);
+                fresh[0].setSubsampling(RowSampler.WEIGHTED, 0.1, 42);
+            }, round);
+
+        if (!selected.contains("predict") && !selected.contains("predictAll"))
+            return;
+        BoostingAlgorithm model = new BoostingAlgorithm(input, labels, clustering);
+        for (int t = 0; t < 100; t++)
+            model.iterate();
+
+        if (selected.contains("predict"))
+            measure("predict", () -> {
+                for (int[] row : input)
+                    sink += model.predict(row);
+                return n;
+            });
+
+        if (selected.contains("predictAll"))
+            measure("predictAll", () -> {
+                sink += model.predictAll(input)[0];
+                return n;
+            });
+    }
+}
@@ -0,0 +1,376 @@
+import edu.princeton.cs.algs4.Point2D;
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class BinaryDataSet {
+
+    // A DataSet stored in a compact binary file and read through a memory
+    // map. Layout (big-endian):
+    //   int magic, int version, int n, int m, int layout (0 rows, 1 columns)
+    //   m locations as (double x, double y)
+    //   n labels as int
+    //   n * m inputs as int, row after row or column after column
+    // Only the locations and labels are copied onto the heap; the inputs
+    // are read in place.
+
+    // "CHRN"
+    public static final int MAGIC = 0x4348524E;
+    public static final int VERSION = 1;
+    public static final int ROW_MAJOR = 0;
+    public static final int COLUMN_MAJOR = 1;
+
+    // ints per mapped segment; a single map is limited to 2 GB
+    private static final int SEGMENT_SHIFT = 28;
+    private static final int SEGMENT_INTS = 1 << SEGMENT_SHIFT;
+
+    private static final int HEADER_BYTES = 5 * 4;
+
+    private final int n, m;
+    private final boolean columnMajor;
+    private final Point2D[] locations;
+    private final int[] labels;
+
+    // the input payload, split in segments of SEGMENT_INTS ints
+    private final IntBuffer[] payload;
+
+    // map a file written by convert()
+    public BinaryDataSet(String filename) {
+        if (filename == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                                                    StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC)
+                throw new IllegalArgumentException("not a binary data set: " + filename);
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new IllegalArgumentException("unsupported version " + version);
+            n = header.getInt();
+            m = header.getInt();
+            int layout = header.getInt();
+            if (n < 0 || m < 1)
+                throw new IllegalArgumentException("invalid data set sizes");
+            if (layout != ROW_MAJOR && layout != COLUMN_MAJOR)
+                throw new IllegalArgumentException("unknown layout " + layout);
+            columnMajor = layout == COLUMN_MAJOR;
+
+            // the sizes must agree with the file before anything is allocated
+            long cells = (long) n * m;
+            if (channel.size() < HEADER_BYTES + 16L * m + 4L * n + 4 * cells)
+                throw new IllegalArgumentException("truncated file: " + filename);
+
+            long position = HEADER_BYTES;
+            ByteBuffer points = ByteBuffer.allocate(16 * m);
+            readFully(channel, points, position);
+            points.flip();
+            position += 16L * m;
+            locations = new Point2D[m];
+            for (int j = 0; j < m; j++)
+                locations[j] = new Point2D(points.getDouble(), points.getDouble());
+
+            ByteBuffer labelBytes = ByteBuffer.allocate(4 * n);
+            readFully(channel, labelBytes, position);
+            labelBytes.flip();
+            position += 4L * n;
+            labels = new int[n];
+            labelBytes.asIntBuffer().get(labels);
+
+            payload = map(channel, FileChannel.MapMode.READ_ONLY, position, cells);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int getN() {
+        return n;
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    public boolean isColumnMajor() {
+        return columnMajor;
+    }
+
+    public Point2D[] getLocations() {
+        return locations.clone();
+    }
+
+    public int[] getLabels() {
+        return labels.clone();
+    }
+
+    // input of row i at location j, read from the map
+    public int get(int i, int j) {
+        if (i < 0 || i >= n || j < 0 || j >= m)
+            throw new IllegalArgumentException("index out of range");
+        return cell(index(i, j));
+    }
+
+    // copy row i into row, which must hold m ints
+    public void readRow(int i, int[] row) {
+        if (i < 0 || i >= n)
+            throw new IllegalArgumentException("row out of range");
+        if (row == null || row.length != m)
+            throw new IllegalArgumentException("invalid row buffer");
+        if (!columnMajor) {
+            bulkRead((long) i * m, row, m);
+            return;
+        }
+        for (int j = 0; j < m; j++)
+            row[j] = cell((long) j * n + i);
+    }
+
+    // copy column j into column, which must hold n ints
+    public void readColumn(int j, int[] column) {
+        if (j < 0 || j >= m)
+            throw new IllegalArgumentException("column out of range");
+        if (column == null || column.length != n)
+            throw new IllegalArgumentException("invalid column buffer");
+        if (columnMajor) {
+            bulkRead((long) j * n, column, n);
+            return;
+        }
+        for (int i = 0; i < n; i++)
+            column[i] = cell((long) i * m + j);
+    }
+
+    // Streams the rows in order. Every call to next() refills and returns
+    // the same buffer, so callers that keep a row must copy it.
+    public Iterator<int[]> rows() {
+        return new Iterator<int[]>() {
+            private final int[] row = new int[m];
+            private int next = 0;
+
+            public boolean hasNext() {
+                return next < n;
+            }
+
+            public int[] next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                readRow(next++, row);
+                return row;
+            }
+        };
+    }
+
+    // materialise the whole n-by-m input, for callers that need int[][]
+    public int[][] getInput() {
+        int[][] input = new int[n][m];
+        for (int i = 0; i < n; i++)
+            readRow(i, input[i]);
+        return input;
+    }
+
+    // position of (i, j) in the payload
+    private long index(int i, int j) {
+        if (columnMajor) return (long) j * n + i;
+        return (long) i * m + j;
+    }
+
+    // payload int at index
+    private int cell(long index) {
+        return payload[(int) (index >>> SEGMENT_SHIFT)].get((int) (index & (SEGMENT_INTS - 1)));
+    }
+
+    // copy count consecutive payload ints starting at index into dst
+    private void bulkRead(long index, int[] dst, int count) {
+        int done = 0;
+        while (done < count) {
+            IntBuffer segment = payload[(int) (index >>> SEGMENT_SHIFT)].duplicate();
+            int offset = (int) (index & (SEGMENT_INTS - 1));
+            int length = Math.min(count - done, segment.limit() - offset);
+            segment.position(offset);
+            segment.get(dst, done, length);
+            done += length;
+            index += length;
+        }
+    }
+
+    // map cells ints starting at byte position as int buffers
+    private static IntBuffer[] map(FileChannel channel, FileChannel.MapMode mode,
+                                   long position, long cells) throws IOException {
+        int segments = (int) ((cells + SEGMENT_INTS - 1) >>> SEGMENT_SHIFT);
+        IntBuffer[] buffers = new IntBuffer[Math.max(segments, 1)];
+        if (segments == 0) buffers[0] = IntBuffer.allocate(0);
+        for (int s = 0; s < segments; s++) {
+            long first = (long) s << SEGMENT_SHIFT;
+            long count = Math.min(SEGMENT_INTS, cells - first);
+            buffers[s] = channel.map(mode, position + 4 * first, 4 * count).asIntBuffer();
+        }
+        return buffers;
+    }
+
+    // fill buffer from the channel starting at position
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new IllegalArgumentException("truncated file");
+            position += read;
+        }
+    }
+
+    // Convert a text file in the DataSet layout into the binary layout.
+    // The text is parsed in one buffered pass and the inputs are written
+    // straight into a memory-mapped output, so neither side holds the
+    // n-by-m matrix.
+    public static void convert(String textFile, String binaryFile, boolean columnMajor) {
+        if (textFile == null || binaryFile == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        try (Tokens in = new Tokens(textFile);
+             FileChannel out = FileChannel.open(Paths.get(binaryFile),
+                                                StandardOpenOption.CREATE,
+                                                StandardOpenOption.TRUNCATE_EXISTING,
+                                                StandardOpenOption.READ,
+                                                StandardOpenOption.WRITE)) {
+            int n = in.nextInt();
+            int m = in.nextInt();
+            if (n < 0 || m < 1)
+                throw new IllegalArgumentException("invalid data set sizes");
+            if (HEADER_BYTES + 16L * m + 4L * n > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("too many locations or labels");
+
+            ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES + 16 * m + 4 * n);
+            head.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(m)
+                .putInt(columnMajor ? COLUMN_MAJOR : ROW_MAJOR);
+            for (int j = 0; j < m; j++) {
+                head.putDouble(in.nextDouble());
+                head.putDouble(in.nextDouble());
+            }
+            for (int i = 0; i < n; i++)
+                head.putInt(in.nextInt());
+            head.flip();
+            long position = 0;
+            while (head.hasRemaining())
+                position += out.write(head, position);
+
+            IntBuffer[] payload = map(out, FileChannel.MapMode.READ_WRITE, position,
+                                      (long) n * m);
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < m; j++) {
+                    long index = columnMajor ? (long) j * n + i : (long) i * m + j;
+                    payload[(int) (index >>> SEGMENT_SHIFT)]
+                            .put((int) (index & (SEGMENT_INTS - 1)), in.nextInt());
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // whitespace-separated tokens read straight from a buffered byte stream,
+    // without the Scanner and regex machinery of algs4.In; shared with
+    // SparseDataSet
+    static class Tokens implements AutoCloseable {
+        private final InputStream stream;
+        private final StringBuilder token = new StringBuilder();
+
+        Tokens(String filename) throws IOException {
+            stream = new BufferedInputStream(new FileInputStream(filename), 1 << 16);
+        }
+
+        // first byte of the next token
+        private int skipSpace() throws IOException {
+            int c = stream.read();
+            while (c == ' ' || c == '\n' || c == '\r' || c == '\t')
+                c = stream.read();
+            if (c < 0)
+                throw new IllegalArgumentException("unexpected end of file");
+            return c;
+        }
+
+        // an optionally signed decimal int, ended by whitespace or the end
+        // of the file; anything else is rejected, as algs4.In would
+        int nextInt() throws IOException {
+            int c = skipSpace();
+            boolean negative = c == '-';
+            if (negative || c == '+') c = stream.read();
+            if (c < '0' || c > '9')
+                throw new IllegalArgumentException("invalid int");
+
+            // accumulated negatively, so Integer.MIN_VALUE fits
+            int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+            int value = 0;
+            while (c >= '0' && c <= '9') {
+                int digit = c - '0';
+                if (value < (limit + digit) / 10)
+                    throw new IllegalArgumentException("int out of range");
+                value = value * 10 - digit;
+                c = stream.read();
+            }
+            if (c >= 0 && c != ' ' && c != '\n' && c != '\r' && c != '\t')
+                throw new IllegalArgumentException("invalid int");
+            return negative ? value : -value;
+        }
+
+        double nextDouble() throws IOException {
+            token.setLength(0);
+            int c = skipSpace();
+            while (c >= 0 && c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                token.append((char) c);
+                c = stream.read();
+            }
+            return Double.parseDouble(token.toString());
+        }
+
+        public void close() throws IOException {
+            stream.close();
+        }
+    }
+
+    // convert a text data set and compare loading both files
+    // usage: java BinaryDataSet input.txt output.bin [columns]
+    public static void main(String[] args) {
+        boolean columns = args.length > 2 && args[2].equals("columns");
+
+        Stopwatch watch = new Stopwatch();
+        convert(args[0], args[1], columns);
+        StdOut.println("convert     " + watch.elapsedTime());
+
+        watch = new Stopwatch();
+        DataSet text = new DataSet(args[0]);
+        StdOut.println("text load   " + watch.elapsedTime());
+
+        watch = new Stopwatch();
+        BinaryDataSet binary = new BinaryDataSet(args[1]);
+        long sum = 0;
+        for (Iterator<int[]> it = binary.rows(); it.hasNext(); )
+            for (int value : it.next())
+                sum += value;
+        StdOut.println("binary scan " + watch.elapsedTime());
+
+        int[][] input = text.getInput();
+        int[] labels = text.getLabels();
+        int[] binaryLabels = binary.getLabels();
+        long expected = 0;
+        boolean same = binary.getN() == text.getN() && binary.getM() == text.getM();
+        for (int i = 0; same && i < text.getN(); i++) {
+            same = labels[i] == binaryLabels[i];
+            for (int j = 0; j < text.getM(); j++) {
+                expected += input[i][j];
+                same = same && input[i][j] == binary.get(i, j);
+            }
+        }
+        StdOut.println("identical   " + (same && sum == expected));
+    }
+}
@@ -3,8 +3,12 @@ import edu.princeton.cs.algs4.StdOut;
 import edu.princeton.cs.algs4.Stopwatch;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
-public class BoostingAlgorithm {
+public class BoostingAlgorithm implements BoostingEngine {
 
 
     // Stores the clustering object used for clustering data points
@@ -13,59 +17,264 @@ public class BoostingAlgorithm {
     // Stores the weights assigned to each data point
     private double[] weights;
 
-    // Stores the modified inputs after clustering
-    private int[][] trainingInputs;
+    // sum of the weights, re-summed by every weight update
+    private double weightSum;
+
+    // ln c for the weights w_i = c exp(-scale y_i margin_i) (see append()),
+    // carried through every weight update so append() can weigh new rows
+    // without a pass over the old ones
+    private double logScale;
+
+    // Stores the modified inputs after clustering, column by column
+    private TrainingMatrix trainingInputs;
 
     // Stores the labels of the training data
     private int[] trainingLabels;
 
+    // Row indices of each reduced dimension sorted by value, shared by
+    // every round
+    private int[][] columnOrder;
+
+    // Quantized training columns in binned mode, null for exact splits
+    private FeatureBins bins;
+
     // Stores the weak learner used in boosting
     private ArrayList<WeakLearner> weakLearners;
 
-    // input size
-    private final int inputSize;
+    // weighted margin of each training row: the vote weight of the
+    // learners voting 1 on it minus that of the learners voting 0
+    private double[] margins;
+
+    // vote weight of each learner, 1 unless alpha weighted; may be longer
+    // than weakLearners
+    private double[] alphas;
+
+    // weigh each learner's vote by its weighted error (AdaBoost)
+    private boolean alphaWeighted;
+
+    // picks the rows each round searches, null to search them all
+    private RowSampler sampler;
+
+    // training rows the current ensemble labels correctly
+    private int trainingCorrect;
+
+    // search the reduced dimensions of each round in parallel
+    private boolean parallelSearch;
+
+    // stumps packed for scoring, rebuilt after the next iteration
+    private CompiledEnsemble compiled;
+
+    // input size, grown by append()
+    private int inputSize;
 
     // input size
     private final int nLocations;
 
+    // weighted error rates are clamped to [MIN_ERROR, 1 - MIN_ERROR] before
+    // taking alpha, so a perfect stump gets a large but finite vote; a rate
+    // over 0.5 gives a negative alpha, a vote for the other label
+    private static final double MIN_ERROR = 1e-10;
+
+    // per-round statistics
+    private static final Metrics.Timer ROUND_TIME = Metrics.global().timer(
+            "boosting_round", "One boosting round: stump fit and weight update");
+    private static final Metrics.Gauge WEIGHT_ENTROPY = Metrics.global().gauge(
+            "boosting_weight_entropy",
+            "Collision entropy -ln(sum w^2) of the row weights after the last round,"
+            + " in nats (ln n when uniform)");
+    private static final Metrics.Gauge ALPHA = Metrics.global().gauge(
+            "boosting_alpha", "Vote weight of the last learner");
+    private static final Metrics.Timer APPEND_TIME = Metrics.global().timer(
+            "boosting_append", "Appending new training rows to a trained model");
+    private static final Metrics.Gauge TRAINING_ACCURACY = Metrics.global().gauge(
+            "boosting_training_accuracy", "Training accuracy after the last round");
+
     // create the clusters and initialize your data structures
     public BoostingAlgorithm(int[][] input, int[] labels, Point2D[] locations, int k) {
-        validate(input);
-        validate(labels);
-        validate(locations);
-        validate(input, labels);
+        this(input, labels, locations, k, 0);
+    }
 
-        int n = input.length;
+    // same as above, but with maxBins > 0 every reduced dimension is
+    // quantized into at most maxBins bins once, and each round searches
+    // splits over the bins; maxBins == 0 keeps exact splits
+    public BoostingAlgorithm(int[][] input, int[] labels, Point2D[] locations, int k,
+                             int maxBins) {
+        this(rowsOf(input, labels), labels, locations, k, maxBins);
+    }
+
+    // build the model from a stream of raw rows, one per label
+    public BoostingAlgorithm(Iterator<int[]> rows, int[] labels, Point2D[] locations,
+                             int k) {
+        this(rows, labels, locations, k, 0);
+    }
+
+    // Same as above with binning. The clustering is built from the locations
+    // first and each row is reduced as soon as it arrives, so only the
+    // n-by-k reduced matrix is kept and the iterator may reuse its buffer.
+    public BoostingAlgorithm(Iterator<int[]> rows, int[] labels, Point2D[] locations,
+                             int k, int maxBins) {
+        this(clusteringOf(rows, labels, locations, k, maxBins), rows, labels, maxBins);
+    }
+
+    // build the model on a clustering made elsewhere, such as one cut from
+    // a ClusterHierarchy; the clustering is shared, not copied
+    public BoostingAlgorithm(int[][] input, int[] labels, Clustering clustering) {
+        this(input, labels, clustering, 0);
+    }
+
+    // same as above with binning
+    public BoostingAlgorithm(int[][] input, int[] labels, Clustering clustering,
+                             int maxBins) {
+        this(clusteringOf(clustering, labels, maxBins), rowsOf(input, labels), labels,
+             maxBins);
+    }
+
+    // build the model from a sparse data set; each row is reduced from its
+    // nonzero entries only, so the dense n-by-m matrix is never formed
+    public BoostingAlgorithm(SparseDataSet data, int k) {
+        this(data, k, 0);
+    }
+
+    // same as above with binning
+    public BoostingAlgorithm(SparseDataSet data, int k, int maxBins) {
+        this(clusteringOf(data, k, maxBins), data, maxBins);
+    }
+
+    private BoostingAlgorithm(Clustering clustering, Iterator<int[]> rows, int[] labels,
+                              int maxBins) {
+        this(clustering, reduce(clustering, rows, labels.length), labels, maxBins);
+    }
+
+    private BoostingAlgorithm(Clustering clustering, SparseDataSet data, int maxBins) {
+        this(clustering, reduce(clustering, data), data.getLabels(), maxBins);
+    }
+
+    // every constructor ends here with the rows already reduced, which are
+    // packed column by column for the rounds to read
+    private BoostingAlgorithm(Clustering clustering, int[][] reduced, int[] labels,
+                              int maxBins) {
+        int n = labels.length;
         inputSize = n;
 
-        nLocations = locations.length;
-        clustering = new Clustering(locations, k);
-        trainingInputs = new int[n][k];
+        nLocations = clustering.locationCount();
+        this.clustering = clustering;
+        trainingInputs = new TrainingMatrix(reduced);
         trainingLabels = labels.clone();
 
         weights = new double[inputSize];
         weakLearners = new ArrayList<>();
 
-        for (int i = 0; i < inputSize; i++)
+        for (int i = 0; i < inputSize; i++) {
             weights[i] = 1.0 / n;
+            weightSum += weights[i];
+        }
+        logScale = -Math.log(n);
 
+        // with no learners every row is predicted 0
+        margins = new double[n];
+        alphas = new double[16];
         for (int i = 0; i < n; i++)
-            // trainingInputs[i] = input[i].clone();
-            trainingInputs[i] = clustering.reduceDimensions(input[i]);
+            if (labels[i] == 0) trainingCorrect++;
+
+        columnOrder = WeakLearner.sortColumns(trainingInputs);
+        if (maxBins > 0) {
+            bins = new FeatureBins(trainingInputs, columnOrder, maxBins);
+            // the bins replace the sorted columns
+            columnOrder = null;
+        }
+    }
+
+    // A model over rows already reduced by clustering, such as the training
+    // folds of a data set reduced once.
+    static BoostingAlgorithm ofReduced(Clustering clustering, int[][] reduced,
+                                       int[] labels, int maxBins) {
+        validate(clustering);
+        validate(reduced);
+        validate(labels);
+        validate(reduced, labels);
+        validateBins(maxBins);
+        for (int[] row : reduced)
+            if (row == null || row.length != clustering.clusterCount())
+                throw new IllegalArgumentException("invalid reduced row");
+        return new BoostingAlgorithm(clustering, reduced, labels, maxBins);
+    }
+
+    // check the arguments and cluster the locations
+    private static Clustering clusteringOf(Iterator<int[]> rows, int[] labels,
+                                           Point2D[] locations, int k, int maxBins) {
+        validate(rows);
+        validate(labels);
+        validate(locations);
+        validateLabels(labels);
+        validateBins(maxBins);
+        return new Clustering(locations, k);
+    }
+
+    private static Clustering clusteringOf(Clustering clustering, int[] labels,
+                                           int maxBins) {
+        validate(clustering);
+        validate(labels);
+        validateBins(maxBins);
+        return clustering;
+    }
+
+    private static Clustering clusteringOf(SparseDataSet data, int k, int maxBins) {
+        validate(data);
+        validateLabels(data.getLabels());
+        validateBins(maxBins);
+        return new Clustering(data.getLocations(), k);
+    }
+
+    private static void validateBins(int maxBins) {
+        if (maxBins != 0 && (maxBins < 2 || maxBins > FeatureBins.MAX_BINS))
+            throw new IllegalArgumentException("number of bins is invalid");
+    }
+
+    // reduce each row as it arrives; there must be exactly n of them
+    private static int[][] reduce(Clustering clustering, Iterator<int[]> rows, int n) {
+        int[][] reduced = new int[n][clustering.clusterCount()];
+        int row = 0;
+        while (rows.hasNext()) {
+            if (row == n)
+                throw new IllegalArgumentException("number of labels is invalid");
+            clustering.reduceDimensions(rows.next(), reduced[row++]);
+        }
+        if (row != n)
+            throw new IllegalArgumentException("number of labels is invalid");
+        return reduced;
+    }
+
+    private static int[][] reduce(Clustering clustering, SparseDataSet data) {
+        int[][] reduced = new int[data.getN()][clustering.clusterCount()];
+        for (int i = 0; i < reduced.length; i++)
+            data.reduceRow(i, clustering, reduced[i]);
+        return reduced;
+    }
+
+    // the rows of input, checked against the labels
+    private static Iterator<int[]> rowsOf(int[][] input, int[] labels) {
+        validate(input);
+        validate(labels);
+        validate(input, labels);
+        return Arrays.asList(input).iterator();
     }
 
     // null validate objects
-    private void validate(Object object) {
+    private static void validate(Object object) {
         if (object == null)
             throw new IllegalArgumentException("argument cannot be null");
     }
 
     //  validate training data
-    private void validate(int[][] input, int[] labels) {
+    private static void validate(int[][] input, int[] labels) {
         int n = input.length;
         if (n != labels.length)
             throw new IllegalArgumentException("number of labels is invalid");
+        validateLabels(labels);
+    }
 
+    // every label must be 0 or 1
+    private static void validateLabels(int[] labels) {
         for (int i = 0; i < labels.length; i++) {
             boolean isValidLabel = labels[i] == 0 || labels[i] == 1;
             if (!isValidLabel)
@@ -73,52 +282,429 @@ public class BoostingAlgorithm {
         }
     }
 
-    // return the current weight of the ith point
+    // return the current weight of the ith point, as a share of the total;
+    // append() leaves the weights to be normalized by the next round
     public double weightOf(int i) {
-        return weights[i];
+        return weights[i] / weightSum;
+    }
+
+    // fan each round's split search out over the reduced dimensions;
+    // the chosen stumps are the same as with a sequential search
+    public void setParallelSearch(boolean parallel) {
+        parallelSearch = parallel;
+    }
+
+    // Search each round's split over a subset of ceil(fraction * n) rows
+    // picked by weight (RowSampler.TRIM or RowSampler.WEIGHTED), so a
+    // round's search costs O(k s) binned, and exact at most O(k s log s)
+    // for s sampled rows. The weight update still runs over every row. A
+    // fraction of 1 turns subsampling off.
+    public void setSubsampling(int mode, double fraction, long seed) {
+        RowSampler next = new RowSampler(mode, fraction, seed);
+        sampler = fraction == 1 ? null : next;
+    }
+
+    // Give each learner the AdaBoost vote weight
+    // alpha = ln((1 - err) / err) / 2, where err is its weighted error
+    // rate, and reweight rows so the misclassified ones carry half of the
+    // total weight, instead of doubling them. Must be chosen before the
+    // first round.
+    public void setAlphaWeighted(boolean weighted) {
+        if (!weakLearners.isEmpty())
+            throw new IllegalStateException("learners already trained");
+        alphaWeighted = weighted;
+    }
+
+    // whether learner votes are alpha weighted
+    public boolean isAlphaWeighted() {
+        return alphaWeighted;
     }
 
     // apply one step of the boosting algorithm
     public void iterate() {
-        WeakLearner learner = new WeakLearner(trainingInputs, weights, trainingLabels);
-
-        // Update weights based on classification results
+        long start = System.nanoTime();
+        long allocated = Metrics.allocatedBytes();
+        WeakLearner learner;
+        if (sampler != null) {
+            int[] rows = sampler.sample(weights);
+            double[] rowWeights = sampler.searchWeights();
+            if (bins != null)
+                learner = new WeakLearner(bins, weights, trainingLabels, rows, rowWeights,
+                                          parallelSearch);
+            else
+                learner = new WeakLearner(trainingInputs, weights, trainingLabels,
+                                          columnOrder, rows, rowWeights, parallelSearch);
+
+            // a stump picked on the sample can be worse than chance on the
+            // full weights; turned around it is better than chance, and
+            // alpha stays positive
+            if (learner.weightedError() > weightSum / 2)
+                learner.flip(weights, inputSize);
+        }
+        else if (bins != null)
+            learner = new WeakLearner(bins, weights, trainingLabels, parallelSearch);
+        else
+            learner = new WeakLearner(trainingInputs, weights, trainingLabels,
+                                      columnOrder, parallelSearch);
+
+        // Double the weights of the rows the learner got wrong (alpha
+        // weighted, scale them by e^alpha and the rest by e^-alpha), summing
+        // the new weights as they are written, then divide by that exact
+        // sum. The second pass adds the learner's vote to each row's margin
+        // and sums the squared weights for the weight entropy.
+        long[] missed = learner.misclassified();
+        double error = learner.weightedError();
+        double alpha = 1.0;
+        double up = 2.0;
+        double down = 1.0;
+        if (alphaWeighted) {
+            double rate = Math.min(Math.max(error / weightSum, MIN_ERROR), 1 - MIN_ERROR);
+            alpha = 0.5 * Math.log((1 - rate) / rate);
+            up = Math.exp(alpha);
+            down = Math.exp(-alpha);
+        }
         double totalWeight = 0.0;
         for (int i = 0; i < inputSize; i++) {
-            int prediction = learner.predict(trainingInputs[i]);
-            if (prediction != trainingLabels[i])
-                weights[i] *= 2.0;
+            boolean miss = (missed[i >>> 6] & (1L << i)) != 0;
+            weights[i] *= miss ? up : down;
             totalWeight += weights[i];
         }
+        // a miss moves the exponent by ln(up / down) / 2 and a hit by minus
+        // that, so the scale takes the common factor and the division
+        logScale += 0.5 * Math.log(up * down) - Math.log(totalWeight);
 
-        // re-normalize weights
-        for (int i = 0; i < inputSize; i++)
-            weights[i] /= totalWeight;
-
+        double sum = 0.0;
+        double squares = 0.0;
+        int correct = 0;
+        for (int i = 0; i < inputSize; i++) {
+            boolean miss = (missed[i >>> 6] & (1L << i)) != 0;
+            double w = weights[i] / totalWeight;
+            weights[i] = w;
+            sum += w;
+            squares += w * w;
+
+            // the learner votes 1 when it is right about a 1 or wrong about a 0
+            boolean votesOne = miss != (trainingLabels[i] == 1);
+            margins[i] += votesOne ? alpha : -alpha;
+            int prediction = margins[i] > 0 ? 1 : 0;
+            if (prediction == trainingLabels[i]) correct++;
+        }
+        weightSum = sum;
+        trainingCorrect = correct;
 
         // store the weak learner for future sampling
+        int t = weakLearners.size();
+        if (t == alphas.length)
+            alphas = Arrays.copyOf(alphas, 2 * t);
+        alphas[t] = alpha;
         weakLearners.add(learner);
+        compiled = null;
+
+        ROUND_TIME.record(System.nanoTime() - start,
+                          allocated < 0 ? -1 : Metrics.allocatedBytes() - allocated);
+        WEIGHT_ENTROPY.set(-Math.log(squares));
+        ALPHA.set(alpha);
+        TRAINING_ACCURACY.set((double) correct / inputSize);
+    }
+
+    // Refresh the model with new training rows (raw, one per label) without
+    // retraining: the clustering and every learner are kept, and the next
+    // iterate() calls boost over the old and new rows together. Each new
+    // row is reduced once and starts with the weight it would hold had it
+    // been trained on from the start: exp(-y margin) in proportion to the
+    // old rows, y = +1 or -1, with the margin in units of ln 2 / 2 when
+    // learners vote equally (a row's weight doubles per miss). The old
+    // rows are not reweighed, re-reduced or replayed; the weights are
+    // normalized again by the next round. For d new rows the cost is
+    // O(d (k log n + m + rounds)), plus copying: the per-row arrays, the
+    // learners' bitsets and the old entries of the sorted columns move
+    // as blocks, and the packed columns or bins grow in place (amortized
+    // O(k) per row).
+    public void append(int[][] rows, int[] labels) {
+        validate(rows);
+        validate(labels);
+        validate(rows, labels);
+        int[][] reduced = new int[rows.length][clustering.clusterCount()];
+        clustering.reduceDimensions(rows, reduced);
+        appendReduced(reduced, labels.clone());
+    }
+
+    // same as above for rows held sparse
+    public void append(SparseDataSet rows) {
+        validate(rows);
+        validateLabels(rows.getLabels());
+        appendReduced(reduce(clustering, rows), rows.getLabels());
+    }
+
+    // append rows already reduced by the clustering; reduced is kept
+    private void appendReduced(int[][] reduced, int[] labels) {
+        if (reduced.length == 0) return;
+        long start = System.nanoTime();
+        long allocated = Metrics.allocatedBytes();
+        int n = inputSize;
+        int d = reduced.length;
+        int total = n + d;
+
+        // the learners' votes on the new rows
+        double[] newMargins = new double[d];
+        for (int t = 0; t < weakLearners.size(); t++) {
+            WeakLearner learner = weakLearners.get(t);
+            learner.extend(reduced, labels, n);
+            long[] missed = learner.misclassified();
+            for (int j = 0; j < d; j++) {
+                int i = n + j;
+                boolean miss = (missed[i >>> 6] & (1L << i)) != 0;
+                boolean votesOne = miss != (labels[j] == 1);
+                newMargins[j] += votesOne ? alphas[t] : -alphas[t];
+            }
+        }
+
+        // the old weights are w_i = c exp(-scale y_i margin_i), with ln c
+        // kept up to date by every round
+        double scale = alphaWeighted ? 1.0 : Math.log(2) / 2;
+        weights = Arrays.copyOf(weights, total);
+        margins = Arrays.copyOf(margins, total);
+        trainingLabels = Arrays.copyOf(trainingLabels, total);
+        trainingInputs = trainingInputs.append(reduced);
+        for (int j = 0; j < d; j++) {
+            int i = n + j;
+            trainingLabels[i] = labels[j];
+            margins[i] = newMargins[j];
+            weights[i] = Math.exp(exponent(newMargins[j], labels[j], scale) + logScale);
+            weightSum += weights[i];
+            if ((newMargins[j] > 0 ? 1 : 0) == labels[j]) trainingCorrect++;
+        }
+        inputSize = total;
+
+        if (bins != null)
+            bins = bins.append(reduced);
+        else
+            columnOrder = mergeColumns(columnOrder, trainingInputs, reduced, n);
+
+        APPEND_TIME.record(System.nanoTime() - start,
+                           allocated < 0 ? -1 : Metrics.allocatedBytes() - allocated);
+        TRAINING_ACCURACY.set(trainingAccuracy());
+    }
+
+    // ln of a row's unnormalized weight: -scale y margin with y = +1 or -1
+    private static double exponent(double margin, int label, double scale) {
+        return label == 1 ? -scale * margin : scale * margin;
+    }
+
+    // The sorted columns of rows 0..first merged with the added rows, which
+    // are rows first on of input and are sorted here. Each added row's
+    // place among the old rows is found by binary search, and the old rows
+    // between two places are copied as one block, so the old rows are read
+    // O(d log n) times per column rather than one by one. Ties go to the
+    // smaller index, as in WeakLearner.sortColumns, so the result is what
+    // sorting all the rows from scratch would give.
+    private static int[][] mergeColumns(int[][] order, TrainingMatrix input,
+                                        int[][] added, int first) {
+        int total = first + added.length;
+        int[][] newOrder = WeakLearner.sortColumns(added);
+        int[][] merged = new int[order.length][total];
+        for (int k = 0; k < order.length; k++) {
+            int[] old = order[k];
+            int[] out = merged[k];
+            int p = 0, r = 0;
+            for (int j : newOrder[k]) {
+                // past every old row of at most the added value; an old row
+                // wins ties, having the smaller index
+                int value = added[j][k];
+                int lo = p, hi = first;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (input.get(old[mid], k) <= value) lo = mid + 1;
+                    else hi = mid;
+                }
+                System.arraycopy(old, p, out, r, lo - p);
+                r += lo - p;
+                p = lo;
+                out[r++] = first + j;
+            }
+            System.arraycopy(old, p, out, r, first - p);
+        }
+        return merged;
     }
 
-    // prediction of the learners for a new sample based on majority vote
+    // accuracy of the current ensemble on the training rows, kept up to
+    // date by iterate()
+    public double trainingAccuracy() {
+        return (double) trainingCorrect / inputSize;
+    }
+
+    // Boost for up to maxRounds more rounds, stopping once training
+    // accuracy has not improved for patience rounds in a row. The
+    // ensemble is cut back to the best round count seen, with the weights
+    // and the subsampling generator state of that round, and that count is
+    // returned.
+    public int train(int maxRounds, int patience) {
+        return train(maxRounds, patience, null, null);
+    }
+
+    // same as above, but watching accuracy on held-out samples; their
+    // margins are updated one learner at a time, so each round costs
+    // O(held-out) extra
+    public int train(int maxRounds, int patience, int[][] heldOut, int[] heldOutLabels) {
+        if (maxRounds < 0 || patience < 1)
+            throw new IllegalArgumentException("invalid number of rounds");
+
+        int[][] reduced = null;
+        double[] heldOutMargins = null;
+        if (heldOut != null) {
+            validate(heldOutLabels);
+            validate(heldOut, heldOutLabels);
+            if (heldOut.length == 0)
+                throw new IllegalArgumentException("held-out set is empty");
+            reduced = new int[heldOut.length][clustering.clusterCount()];
+            clustering.reduceDimensions(heldOut, reduced);
+            heldOutMargins = new double[heldOut.length];
+            CompiledEnsemble ensemble = compile();
+            for (int j = 0; j < reduced.length; j++)
+                heldOutMargins[j] = ensemble.margin(reduced[j]);
+        }
+
+        int bestRounds = weakLearners.size();
+        double best = heldOut == null ? trainingAccuracy()
+                                      : accuracy(heldOutMargins, heldOutLabels);
+        double[] bestWeights = weights.clone();
+        double bestWeightSum = weightSum;
+        double bestLogScale = logScale;
+        long bestSamplerState = sampler == null ? 0 : sampler.state();
+
+        int stale = 0;
+        for (int t = 0; t < maxRounds && stale < patience; t++) {
+            iterate();
+            int rounds = weakLearners.size();
+            double score;
+            if (heldOut == null) {
+                score = trainingAccuracy();
+            }
+            else {
+                WeakLearner learner = weakLearners.get(rounds - 1);
+                double alpha = alphas[rounds - 1];
+                for (int j = 0; j < reduced.length; j++)
+                    heldOutMargins[j] += learner.predict(reduced[j]) == 1 ? alpha : -alpha;
+                score = accuracy(heldOutMargins, heldOutLabels);
+            }
+
+            if (score > best) {
+                best = score;
+                bestRounds = rounds;
+                System.arraycopy(weights, 0, bestWeights, 0, inputSize);
+                bestWeightSum = weightSum;
+                bestLogScale = logScale;
+                if (sampler != null) bestSamplerState = sampler.state();
+                stale = 0;
+            }
+            else {
+                stale++;
+            }
+        }
+
+        if (bestRounds < weakLearners.size()) {
+            truncate(bestRounds);
+            System.arraycopy(bestWeights, 0, weights, 0, inputSize);
+            weightSum = bestWeightSum;
+            logScale = bestLogScale;
+            if (sampler != null) sampler.restore(bestSamplerState);
+        }
+        return bestRounds;
+    }
+
+    // accuracy of the vote from per-sample margins; a tie predicts 0
+    private static double accuracy(double[] margins, int[] labels) {
+        int correct = 0;
+        for (int j = 0; j < margins.length; j++)
+            if ((margins[j] > 0 ? 1 : 0) == labels[j]) correct++;
+        return (double) correct / margins.length;
+    }
+
+    // drop every learner after the first rounds and take their votes back
+    private void truncate(int rounds) {
+        for (int t = weakLearners.size() - 1; t >= rounds; t--) {
+            long[] missed = weakLearners.remove(t).misclassified();
+            double alpha = alphas[t];
+            for (int i = 0; i < inputSize; i++) {
+                boolean miss = (missed[i >>> 6] & (1L << i)) != 0;
+                boolean votesOne = miss != (trainingLabels[i] == 1);
+                margins[i] -= votesOne ? alpha : -alpha;
+            }
+        }
+        trainingCorrect = 0;
+        for (int i = 0; i < inputSize; i++)
+            if ((margins[i] > 0 ? 1 : 0) == trainingLabels[i]) trainingCorrect++;
+        compiled = null;
+    }
+
+    // number of rounds run so far
+    public int rounds() {
+        return weakLearners.size();
+    }
+
+    // fraction of training rows misclassified by the first rounds learners,
+    // computed from their stored misclassification sets without rescoring
+    public double trainingError(int rounds) {
+        if (rounds < 0 || rounds > weakLearners.size())
+            throw new IllegalArgumentException("invalid number of rounds");
+        if (alphaWeighted)
+            return WeakLearner.ensembleError(weakLearners.subList(0, rounds), alphas,
+                                             trainingLabels);
+        return WeakLearner.ensembleError(weakLearners.subList(0, rounds), trainingLabels);
+    }
+
+    // pack the learners trained so far into primitive arrays for scoring
+    public CompiledEnsemble compile() {
+        if (compiled == null)
+            compiled = new CompiledEnsemble(weakLearners, alphaWeighted ? alphas : null,
+                                            clustering.clusterCount());
+        return compiled;
+    }
+
+    // the trained model as an immutable scorer
+    public ChurnModel toModel() {
+        return new ChurnModel(clustering, compile());
+    }
+
+    // save the clustering and stumps so scoring can start without training
+    public void save(String filename) {
+        toModel().save(filename);
+    }
+
+    // the clustering used to reduce samples before scoring
+    public Clustering getClustering() {
+        return clustering;
+    }
+
+    // prediction of the learners for a new sample based on their vote
     public int predict(int[] sample) {
         validate(sample);
         if (nLocations != sample.length)
             throw new IllegalArgumentException("invalid number of samples");
+        boolean timed = Metrics.sampled();
+        long start = timed ? System.nanoTime() : 0;
         int[] reducedSample = clustering.reduceDimensions(sample);
-        // count each vote from weak learners
-        int zeroVotes = 0, oneVotes = 0;
+        // vote of the weak learners
+        int prediction = compile().predict(reducedSample);
+        if (timed) ChurnModel.PREDICT_TIME.record(System.nanoTime() - start);
+        ChurnModel.PREDICTIONS.increment();
+        return prediction;
+    }
 
-        for (WeakLearner learner : weakLearners) {
-            if (learner.predict(reducedSample) == 0) zeroVotes++;
-            else oneVotes++;
-        }
-        if (oneVotes > zeroVotes)
-            return 1;
-        return 0;
+    // predictions for a batch of samples, scored in blocks on the common pool
+    public int[] predictAll(int[][] samples) {
+        return predictAll(samples, ForkJoinPool.commonPool());
+    }
+
+    // same as above, on the given pool
+    public int[] predictAll(int[][] samples, ForkJoinPool pool) {
+        validate(samples);
+        return new BatchScorer(clustering, compile(), pool).predictAll(samples);
     }
 
     // unit testing (required)
+    // optional args[4]: number of bins; the binned model is trained next to
+    // the exact one and both accuracies are reported
     public static void main(String[] args) {
 
         // read in the terms from a file
@@ -126,6 +712,7 @@ public class BoostingAlgorithm {
         DataSet testing = new DataSet(args[1]);
         int k = Integer.parseInt(args[2]);
         int iteration = Integer.parseInt(args[3]);
+        int maxBins = args.length > 4 ? Integer.parseInt(args[4]) : 0;
 
         int[][] trainingInput = training.getInput();
         int[][] testingInput = testing.getInput();
@@ -142,15 +729,126 @@ public class BoostingAlgorithm {
         StdOut.println(model.weightOf(2));
         for (int t = 0; t < iteration; t++)
             model.iterate();
-        double testAccuracy = 0;
-        for (int i = 0; i < testing.getN(); i++)
-            if (model.predict(testingInput[i]) == testingLabels[i])
-                testAccuracy += 1;
-        testAccuracy /= testing.getN();
+        double testAccuracy = accuracy(model, testingInput, testingLabels);
 
 
         StdOut.println("elapsted time " + watch.elapsedTime());
         StdOut.println("Test accuracy of model: " + testAccuracy);
+        StdOut.println("Stumps evaluated per prediction: "
+                               + stumpsEvaluated(model, testingInput) + " of " + iteration);
+
+        watch = new Stopwatch();
+        BoostingAlgorithm weighted = new BoostingAlgorithm(trainingInput, trainingLabels,
+                                                           trainingLocations, k);
+        weighted.setAlphaWeighted(true);
+        for (int t = 0; t < iteration; t++)
+            weighted.iterate();
+        StdOut.println("elapsted time (alpha weighted) " + watch.elapsedTime());
+        StdOut.println("Test accuracy of alpha-weighted model: "
+                               + accuracy(weighted, testingInput, testingLabels));
+        StdOut.println("Stumps evaluated per prediction: "
+                               + stumpsEvaluated(weighted, testingInput) + " of " + iteration);
+        signedAlphaCheck();
+        subsampledAlphaCheck(trainingInput, trainingLabels, trainingLocations, k,
+                             iteration);
+
+        if (maxBins == 0) return;
+
+        watch = new Stopwatch();
+        BoostingAlgorithm binned = new BoostingAlgorithm(trainingInput, trainingLabels,
+                                                         trainingLocations, k, maxBins);
+        for (int t = 0; t < iteration; t++)
+            binned.iterate();
+        double binnedAccuracy = accuracy(binned, testingInput, testingLabels);
+
+        StdOut.println("elapsted time (" + maxBins + " bins) " + watch.elapsedTime());
+        StdOut.println("Test accuracy of binned model: " + binnedAccuracy);
+        StdOut.println("Accuracy difference (binned - exact): "
+                               + (binnedAccuracy - testAccuracy));
+    }
+
+    // Alpha weighted boosting on tiny noisy data, where rounding puts some
+    // stumps' weighted error just over 0.5 and their alpha below zero.
+    // The compiled model must still build, and label every training row
+    // as the training margins do.
+    private static void signedAlphaCheck() {
+        int negative = 0;
+        int mismatches = 0;
+        for (int seed = 0; seed < 300; seed++) {
+            Random random = new Random(seed);
+            int n = 5 + random.nextInt(30);
+            int m = 2 + random.nextInt(4);
+            Point2D[] locations = new Point2D[m];
+            for (int j = 0; j < m; j++)
+                locations[j] = new Point2D(random.nextDouble(), random.nextDouble());
+            int[][] input = new int[n][m];
+            int[] labels = new int[n];
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < m; j++)
+                    input[i][j] = random.nextInt(2);
+                labels[i] = random.nextInt(2);
+            }
+            BoostingAlgorithm model = new BoostingAlgorithm(input, labels, locations,
+                                                            1 + random.nextInt(2));
+            model.setAlphaWeighted(true);
+            for (int t = 0; t < 60; t++)
+                model.iterate();
+            CompiledEnsemble ensemble = model.compile();
+            for (int t = 0; t < ensemble.size(); t++)
+                if (ensemble.alphaOf(t) < 0) negative++;
+            int correct = 0;
+            for (int i = 0; i < n; i++)
+                if (model.predict(input[i]) == labels[i]) correct++;
+            if (correct != Math.round(model.trainingAccuracy() * n)) mismatches++;
+        }
+        StdOut.println("Stumps past error 0.5: " + negative
+                               + ", models scoring unlike their margins: " + mismatches);
     }
-}
 
+    // Alpha weighted boosting on a 2% sample per round, TRIM and WEIGHTED.
+    // A stump picked on the sample that is worse than chance on the full
+    // weights is turned around, so no alpha should fall below zero by
+    // more than rounding, and the compiled model must score the training
+    // rows as the margins do.
+    private static void subsampledAlphaCheck(int[][] input, int[] labels,
+                                             Point2D[] locations, int k, int rounds) {
+        String[] names = { "TRIM", "WEIGHTED" };
+        int[] modes = { RowSampler.TRIM, RowSampler.WEIGHTED };
+        for (int s = 0; s < modes.length; s++) {
+            BoostingAlgorithm model = new BoostingAlgorithm(input, labels, locations, k);
+            model.setAlphaWeighted(true);
+            model.setSubsampling(modes[s], 0.02, 42);
+            for (int t = 0; t < rounds; t++)
+                model.iterate();
+            CompiledEnsemble ensemble = model.compile();
+            double smallest = Double.POSITIVE_INFINITY;
+            for (int t = 0; t < ensemble.size(); t++)
+                smallest = Math.min(smallest, ensemble.alphaOf(t));
+            StdOut.println(names[s] + " 2% alpha weighted: smallest alpha " + smallest
+                                   + ", training accuracy " + model.trainingAccuracy()
+                                   + " (compiled " + accuracy(model, input, labels) + ")");
+        }
+    }
+
+    // mean number of stumps the early-exit scorer evaluates per sample
+    private static double stumpsEvaluated(BoostingAlgorithm model, int[][] input) {
+        CompiledEnsemble ensemble = model.compile();
+        int[] reduced = new int[ensemble.dimensions()];
+        long total = 0;
+        for (int[] sample : input) {
+            model.getClustering().reduceDimensions(sample, reduced);
+            total += ensemble.stumpsEvaluated(reduced);
+        }
+        return (double) total / input.length;
+    }
+
+    // fraction of samples the model labels correctly
+    private static double accuracy(BoostingAlgorithm model, int[][] input, int[] labels) {
+        int[] predictions = model.predictAll(input);
+        double correct = 0;
+        for (int i = 0; i < input.length; i++)
+            if (predictions[i] == labels[i])
+                correct += 1;
+        return correct / input.length;
+    }
+}
@@ -0,0 +1,42 @@
+import java.util.concurrent.ForkJoinPool;
+
+// The training and scoring operations behind both entry points.
+// BoostingAlgorithm implements them and CustomerChurnPredictor delegates
+// to whichever engine it is given, so a change to the rounds or to
+// scoring reaches both.
+public interface BoostingEngine {
+
+    // run one boosting round
+    void iterate();
+
+    // add training rows (raw, one per label) to a trained model; later
+    // rounds boost over the old and new rows together
+    void append(int[][] rows, int[] labels);
+
+    // number of rounds run so far
+    int rounds();
+
+    // current weight of the ith training row
+    double weightOf(int i);
+
+    // fraction of training rows the current ensemble labels correctly
+    double trainingAccuracy();
+
+    // fraction of training rows misclassified by the first rounds learners
+    double trainingError(int rounds);
+
+    // the learners trained so far, packed for scoring
+    CompiledEnsemble compile();
+
+    // the trained model as an immutable scorer
+    ChurnModel toModel();
+
+    // the clustering used to reduce samples
+    Clustering getClustering();
+
+    // predicted label (0 or 1) of a raw sample
+    int predict(int[] sample);
+
+    // predicted labels of a batch of raw samples, scored on pool
+    int[] predictAll(int[][] samples, ForkJoinPool pool);
+}
@@ -0,0 +1,214 @@
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+
+public class ChurnModel {
+
+    // Saved model layout (big-endian):
+    //   int magic, int version, int m, int k, int t, int id width (1, 2, 4),
+    //   int flags (bit 0: weighted stumps)
+    //   m cluster ids, each in id width bytes
+    //   t stump dimensions (int), t thresholds (int), t signs (byte)
+    //   t vote weights (double), when weighted
+    // Version 1 files have no flags word and no weights; they still load.
+
+    // "CHMD"
+    public static final int MAGIC = 0x43484D44;
+    public static final int VERSION = 2;
+
+    private static final int HEADER_BYTES = 7 * 4;
+    private static final int WEIGHTED = 1;
+
+    // single-sample scoring, shared by every model's predict() (timed on
+    // a sample of calls); batches add their rows to PREDICTIONS as well
+    static final Metrics.Timer PREDICT_TIME = Metrics.global().timer(
+            "predict_single", "Scoring one raw sample");
+    static final Metrics.Counter PREDICTIONS = Metrics.global().counter(
+            "predict_rows", "Samples scored");
+
+    // frozen clustering of the locations
+    private final Clustering clustering;
+
+    // trained stumps
+    private final CompiledEnsemble ensemble;
+
+    // an immutable scoring model; ensemble must be over clustering's
+    // reduced dimensions
+    public ChurnModel(Clustering clustering, CompiledEnsemble ensemble) {
+        if (clustering == null || ensemble == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        if (ensemble.dimensions() != clustering.clusterCount())
+            throw new IllegalArgumentException("ensemble does not match clustering");
+        this.clustering = clustering;
+        this.ensemble = ensemble;
+    }
+
+    public Clustering getClustering() {
+        return clustering;
+    }
+
+    public CompiledEnsemble getEnsemble() {
+        return ensemble;
+    }
+
+    // predicted label (0 or 1) of a raw sample
+    public int predict(int[] sample) {
+        boolean timed = Metrics.sampled();
+        long start = timed ? System.nanoTime() : 0;
+        int prediction = ensemble.predict(clustering.reduceDimensions(sample));
+        if (timed) PREDICT_TIME.record(System.nanoTime() - start);
+        PREDICTIONS.increment();
+        return prediction;
+    }
+
+    // predictions for a batch of raw samples on the common pool
+    public int[] predictAll(int[][] samples) {
+        return predictAll(samples, ForkJoinPool.commonPool());
+    }
+
+    // same as above, on the given pool
+    public int[] predictAll(int[][] samples, ForkJoinPool pool) {
+        return new BatchScorer(clustering, ensemble, pool).predictAll(samples);
+    }
+
+    // write the model to filename
+    public void save(String filename) {
+        if (filename == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        int m = clustering.locationCount();
+        int k = clustering.clusterCount();
+        int t = ensemble.size();
+        int width = k <= 256 ? 1 : k <= 65536 ? 2 : 4;
+        boolean weighted = ensemble.isWeighted();
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + width * m + 9 * t
+                                                        + (weighted ? 8 * t : 0));
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(m).putInt(k).putInt(t).putInt(width)
+              .putInt(weighted ? WEIGHTED : 0);
+        for (int i = 0; i < m; i++) {
+            int id = clustering.clusterOf(i);
+            if (width == 1) buffer.put((byte) id);
+            else if (width == 2) buffer.putShort((short) id);
+            else buffer.putInt(id);
+        }
+        for (int s = 0; s < t; s++)
+            buffer.putInt(ensemble.dimensionOf(s));
+        for (int s = 0; s < t; s++)
+            buffer.putInt(ensemble.valueOf(s));
+        for (int s = 0; s < t; s++)
+            buffer.put((byte) ensemble.signOf(s));
+        if (weighted)
+            for (int s = 0; s < t; s++)
+                buffer.putDouble(ensemble.alphaOf(s));
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                                                    StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                                    StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // read a model written by save(); the file is mapped and copied out in
+    // bulk, so loading costs O(m + t) with no clustering work
+    public static ChurnModel load(String filename) {
+        if (filename == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                                                    StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (buffer.remaining() < HEADER_BYTES - 4 || buffer.getInt() != MAGIC)
+            throw new IllegalArgumentException("not a churn model: " + filename);
+        int version = buffer.getInt();
+        if (version != 1 && version != VERSION)
+            throw new IllegalArgumentException("unsupported version " + version);
+        if (version > 1 && buffer.remaining() < HEADER_BYTES - 8)
+            throw new IllegalArgumentException("corrupt model file: " + filename);
+        int m = buffer.getInt();
+        int k = buffer.getInt();
+        int t = buffer.getInt();
+        int width = buffer.getInt();
+        int flags = version > 1 ? buffer.getInt() : 0;
+        boolean weighted = (flags & WEIGHTED) != 0;
+        if (m < 1 || t < 0 || (width != 1 && width != 2 && width != 4)
+                || (flags & ~WEIGHTED) != 0
+                || buffer.remaining() != (long) width * m + (weighted ? 17L : 9L) * t)
+            throw new IllegalArgumentException("corrupt model file: " + filename);
+
+        int[] ids = new int[m];
+        for (int i = 0; i < m; i++) {
+            if (width == 1) ids[i] = buffer.get() & 0xFF;
+            else if (width == 2) ids[i] = buffer.getShort() & 0xFFFF;
+            else ids[i] = buffer.getInt();
+        }
+
+        int[] dimension = new int[t];
+        int[] value = new int[t];
+        buffer.asIntBuffer().get(dimension);
+        buffer.position(buffer.position() + 4 * t);
+        buffer.asIntBuffer().get(value);
+        buffer.position(buffer.position() + 4 * t);
+        int[] sign = new int[t];
+        for (int s = 0; s < t; s++)
+            sign[s] = buffer.get();
+        double[] alpha = null;
+        if (weighted) {
+            alpha = new double[t];
+            for (int s = 0; s < t; s++)
+                alpha[s] = buffer.getDouble();
+        }
+
+        return new ChurnModel(new Clustering(ids, k),
+                              new CompiledEnsemble(dimension, value, sign, alpha, k));
+    }
+
+    // train, save, reload and compare predictions
+    // usage: java ChurnModel train.txt test.txt k rounds model.bin [weighted]
+    public static void main(String[] args) {
+        DataSet training = new DataSet(args[0]);
+        DataSet testing = new DataSet(args[1]);
+        int k = Integer.parseInt(args[2]);
+        int rounds = Integer.parseInt(args[3]);
+
+        Stopwatch watch = new Stopwatch();
+        BoostingAlgorithm model = new BoostingAlgorithm(training.getInput(),
+                                                        training.getLabels(),
+                                                        training.getLocations(), k);
+        model.setAlphaWeighted(args.length > 5 && args[5].equals("weighted"));
+        for (int t = 0; t < rounds; t++)
+            model.iterate();
+        StdOut.println("training    " + watch.elapsedTime());
+
+        model.save(args[4]);
+        watch = new Stopwatch();
+        ChurnModel loaded = ChurnModel.load(args[4]);
+        StdOut.println("cold start  " + watch.elapsedTime());
+
+        int[][] input = testing.getInput();
+        int[] expected = model.predictAll(input);
+        int[] actual = loaded.predictAll(input);
+        int same = 0;
+        for (int i = 0; i < input.length; i++)
+            if (expected[i] == actual[i]) same++;
+        StdOut.println(same + " of " + input.length + " predictions identical");
+    }
+}
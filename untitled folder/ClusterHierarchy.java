@@ -0,0 +1,100 @@
+import edu.princeton.cs.algs4.Point2D;
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.Stopwatch;
+import edu.princeton.cs.algs4.UF;
+
+import java.util.Random;
+
+public class ClusterHierarchy {
+
+    // The single-linkage hierarchy of a set of locations. The minimum
+    // spanning tree does not depend on k: cutting its k - 1 longest edges
+    // gives the k clusters, so the tree is built once and each k only
+    // joins its m - k shortest edges with a union-find, O(m alpha(m)).
+
+    // endpoints of the m - 1 tree edges, in increasing order of length
+    private final int[] from;
+    private final int[] to;
+
+    // number of locations
+    private final int nLocations;
+
+    // build the minimum spanning tree of the locations
+    public ClusterHierarchy(Point2D[] locations) {
+        if (locations == null)
+            throw new IllegalArgumentException("the input should not be null");
+        if (locations.length == 0)
+            throw new IllegalArgumentException("no locations");
+        nLocations = locations.length;
+
+        long start = System.nanoTime();
+        long allocated = Metrics.allocatedBytes();
+        EuclideanMST mst = new EuclideanMST(locations);
+        from = new int[mst.size()];
+        to = new int[mst.size()];
+        for (int e = 0; e < from.length; e++) {
+            from[e] = mst.from(e);
+            to[e] = mst.to(e);
+        }
+        Clustering.lap(Clustering.MST_TIME, start, allocated);
+    }
+
+    // number of locations
+    public int locationCount() {
+        return nLocations;
+    }
+
+    // cluster of every location when cut into k clusters, numbered in order
+    // of each cluster's first location (the numbering CC uses)
+    public int[] assignment(int k) {
+        if (k < 1 || k > nLocations)
+            throw new IllegalArgumentException("the number od clusters is invalid");
+        long start = System.nanoTime();
+        long allocated = Metrics.allocatedBytes();
+
+        UF uf = new UF(nLocations);
+        for (int e = 0; e < nLocations - k; e++)
+            uf.union(from[e], to[e]);
+
+        int[] clusters = Clustering.components(uf, nLocations);
+        Clustering.lap(Clustering.COMPONENTS_TIME, start, allocated);
+        return clusters;
+    }
+
+    // the clustering into k clusters
+    public Clustering clustering(int k) {
+        return new Clustering(assignment(k), k);
+    }
+
+    // unit testing
+    // usage: java ClusterHierarchy m kFrom kTo
+    public static void main(String[] args) {
+        int m = Integer.parseInt(args[0]);
+        int kFrom = Integer.parseInt(args[1]);
+        int kTo = Integer.parseInt(args[2]);
+        Random random = new Random(m);
+        Point2D[] points = new Point2D[m];
+        for (int i = 0; i < m; i++)
+            points[i] = new Point2D(random.nextDouble(), random.nextDouble());
+
+        Stopwatch watch = new Stopwatch();
+        Clustering[] separate = new Clustering[kTo - kFrom + 1];
+        for (int k = kFrom; k <= kTo; k++)
+            separate[k - kFrom] = new Clustering(points, k);
+        StdOut.println("one tree per k " + watch.elapsedTime());
+
+        watch = new Stopwatch();
+        ClusterHierarchy hierarchy = new ClusterHierarchy(points);
+        Clustering[] shared = new Clustering[kTo - kFrom + 1];
+        for (int k = kFrom; k <= kTo; k++)
+            shared[k - kFrom] = hierarchy.clustering(k);
+        StdOut.println("one tree       " + watch.elapsedTime());
+
+        int differ = 0;
+        for (int k = kFrom; k <= kTo; k++)
+            for (int i = 0; i < m; i++)
+                if (separate[k - kFrom].clusterOf(i) != shared[k - kFrom].clusterOf(i))
+                    differ++;
+        StdOut.println(differ + " assignments differ");
+    }
+}
@@ -0,0 +1,135 @@
+import edu.princeton.cs.algs4.Point2D;
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class ClusterSweep {
+
+    // Trains and scores one model per cluster count in a range. The spanning
+    // tree is built once in a ClusterHierarchy and every k is cut from it,
+    // so the sweep costs one MST however many k it tries; the models then
+    // train concurrently, one task per k, on the given pool.
+
+    // cluster counts tried, in increasing order
+    private final int[] ks;
+
+    // accuracy of the model for ks[j] on the training and held-out rows
+    private final double[] trainingAccuracy;
+    private final double[] testAccuracy;
+
+    // seconds spent cutting, training and scoring ks[j]
+    private final double[] seconds;
+
+    // train for rounds rounds at k = kFrom, kFrom + step, ..., up to kTo
+    public ClusterSweep(int[][] input, int[] labels, Point2D[] locations,
+                        int[][] testInput, int[] testLabels,
+                        int kFrom, int kTo, int step, int rounds, ForkJoinPool pool) {
+        if (input == null || labels == null || locations == null || testInput == null
+                || testLabels == null || pool == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        if (testInput.length != testLabels.length)
+            throw new IllegalArgumentException("number of labels is invalid");
+        if (kFrom < 1 || kTo < kFrom || kTo > locations.length || step < 1)
+            throw new IllegalArgumentException("invalid range of k");
+        if (rounds < 0)
+            throw new IllegalArgumentException("number of rounds is invalid");
+
+        int count = (kTo - kFrom) / step + 1;
+        ks = new int[count];
+        for (int j = 0; j < count; j++)
+            ks[j] = kFrom + j * step;
+        trainingAccuracy = new double[count];
+        testAccuracy = new double[count];
+        seconds = new double[count];
+
+        // read only from here on, so every task cuts from it
+        ClusterHierarchy hierarchy = new ClusterHierarchy(locations);
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int j = 0; j < count; j++) {
+            int index = j;
+            tasks.add(pool.submit(() -> run(index, hierarchy, input, labels, testInput,
+                                            testLabels, rounds, pool)));
+        }
+        for (ForkJoinTask<?> task : tasks)
+            task.join();
+    }
+
+    // train and score the model for ks[j]; each task writes only its slot
+    private void run(int j, ClusterHierarchy hierarchy, int[][] input, int[] labels,
+                     int[][] testInput, int[] testLabels, int rounds, ForkJoinPool pool) {
+        long start = System.nanoTime();
+        BoostingAlgorithm model = new BoostingAlgorithm(input, labels,
+                                                        hierarchy.clustering(ks[j]));
+        for (int t = 0; t < rounds; t++)
+            model.iterate();
+        trainingAccuracy[j] = model.trainingAccuracy();
+
+        int[] predictions = model.predictAll(testInput, pool);
+        int correct = 0;
+        for (int i = 0; i < predictions.length; i++)
+            if (predictions[i] == testLabels[i]) correct++;
+        testAccuracy[j] = testLabels.length == 0 ? 0 : (double) correct / testLabels.length;
+        seconds[j] = (System.nanoTime() - start) / 1e9;
+    }
+
+    // number of cluster counts tried
+    public int size() {
+        return ks.length;
+    }
+
+    // the jth cluster count
+    public int k(int j) {
+        return ks[j];
+    }
+
+    public double trainingAccuracy(int j) {
+        return trainingAccuracy[j];
+    }
+
+    public double testAccuracy(int j) {
+        return testAccuracy[j];
+    }
+
+    public double seconds(int j) {
+        return seconds[j];
+    }
+
+    // the cluster count with the best held-out accuracy, the smallest on ties
+    public int bestK() {
+        int best = 0;
+        for (int j = 1; j < ks.length; j++)
+            if (testAccuracy[j] > testAccuracy[best]) best = j;
+        return ks[best];
+    }
+
+    // usage: java ClusterSweep train.txt test.txt kFrom kTo step rounds [threads]
+    public static void main(String[] args) {
+        DataSet training = new DataSet(args[0]);
+        DataSet test = new DataSet(args[1]);
+        int kFrom = Integer.parseInt(args[2]);
+        int kTo = Integer.parseInt(args[3]);
+        int step = Integer.parseInt(args[4]);
+        int rounds = Integer.parseInt(args[5]);
+        int threads = args.length > 6 ? Integer.parseInt(args[6])
+                                      : Runtime.getRuntime().availableProcessors();
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Stopwatch watch = new Stopwatch();
+        ClusterSweep sweep = new ClusterSweep(training.getInput(), training.getLabels(),
+                                              training.getLocations(), test.getInput(),
+                                              test.getLabels(), kFrom, kTo, step, rounds,
+                                              pool);
+        double elapsed = watch.elapsedTime();
+        pool.shutdown();
+
+        for (int j = 0; j < sweep.size(); j++)
+            StdOut.printf("k %4d  train %.4f  test %.4f  %.2f s%n", sweep.k(j),
+                          sweep.trainingAccuracy(j), sweep.testAccuracy(j), sweep.seconds(j));
+        StdOut.println("best k " + sweep.bestK() + ", " + elapsed + " s in all");
+    }
+}
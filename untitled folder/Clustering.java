@@ -5,11 +5,20 @@ import edu.princeton.cs.algs4.KruskalMST;
 import edu.princeton.cs.algs4.MaxPQ;
 import edu.princeton.cs.algs4.Point2D;
 import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.Stopwatch;
+import edu.princeton.cs.algs4.UF;
+
+import java.util.Arrays;
+import java.util.Random;
 
 public class Clustering {
 
-    // representation of connected component
-    private final CC cc;
+    // cluster id of every location, numbered in order of each
+    // cluster's first location (the numbering CC uses); stored in the
+    // narrowest array that holds k ids, the other two stay null
+    private final byte[] byteIds;
+    private final short[] shortIds;
+    private final int[] ids;
 
     // cluster size
     private final int clusterSize;
@@ -17,17 +26,76 @@ public class Clustering {
     // number of locations
     private final int nLocations;
 
+    // time spent in each clustering phase, shared with ClusterHierarchy
+    private static final Metrics.Timer GRAPH_TIME = Metrics.global().timer(
+            "clustering_graph_build", "Building the complete graph of the locations");
+    static final Metrics.Timer MST_TIME = Metrics.global().timer(
+            "clustering_mst", "Minimum spanning tree of the locations");
+    static final Metrics.Timer COMPONENTS_TIME = Metrics.global().timer(
+            "clustering_components", "Cutting the spanning tree into clusters");
 
     // run the clustering algorithm and create the clusters
     public Clustering(Point2D[] locations, int k) {
+        this(locations, k, false);
+    }
+
+    // with allPairs set, build the complete graph and run KruskalMST on it;
+    // that path needs O(m^2) memory and is kept as the reference the planar
+    // path (a Euclidean MST over a kd-tree) is checked against
+    public Clustering(Point2D[] locations, int k, boolean allPairs) {
+        this(cluster(locations, k, allPairs), k);
+    }
+
+    // rebuild a clustering from a frozen assignment, such as one read back
+    // from a saved model: location i belongs to cluster clusters[i]
+    Clustering(int[] clusters, int k) {
 
+        inrange(clusters);
+        nLocations = clusters.length;
+        clusterSize = k;
+        inrange2(k, nLocations);
+        for (int cluster : clusters)
+            if (cluster < 0 || cluster >= k)
+                throw new IllegalArgumentException("invalid cluster index");
+
+        // freeze the assignment into a flat lookup table
+        if (k <= 256) {
+            byteIds = new byte[nLocations];
+            for (int i = 0; i < nLocations; i++)
+                byteIds[i] = (byte) clusters[i];
+            shortIds = null;
+            ids = null;
+        }
+        else if (k <= 65536) {
+            shortIds = new short[nLocations];
+            for (int i = 0; i < nLocations; i++)
+                shortIds[i] = (short) clusters[i];
+            byteIds = null;
+            ids = null;
+        }
+        else {
+            ids = clusters.clone();
+            byteIds = null;
+            shortIds = null;
+        }
+    }
+
+    // cluster assignment of every location
+    private static int[] cluster(Point2D[] locations, int k, boolean allPairs) {
         inrange(locations);
+        inrange2(k, locations.length);
+        if (allPairs)
+            return allPairsClusters(locations, k);
+        return planarClusters(locations, k);
+    }
+
+    // clusters from the minimum spanning tree of the complete graph
+    private static int[] allPairsClusters(Point2D[] locations, int k) {
         int localength = locations.length;
-        nLocations = localength;
-        clusterSize = k;
-        inrange2(k);
         // construct graph
-        int nvertices = nLocations;
+        long start = System.nanoTime();
+        long allocated = Metrics.allocatedBytes();
+        int nvertices = localength;
         EdgeWeightedGraph graph = new EdgeWeightedGraph(nvertices);
         for (int i = 0; i < nvertices; i++) {
             for (int j = i + 1; j < nvertices; j++) {
@@ -36,71 +104,290 @@ public class Clustering {
             }
         }
 
-        int nEdges = localength - k; // number of edges in the cluster
-        EdgeWeightedGraph clusterGraph = new EdgeWeightedGraph(nvertices);
+        start = lap(GRAPH_TIME, start, allocated);
+        allocated = Metrics.allocatedBytes();
 
-        // form cluster of k connected components
-        for (Edge edge : getClusters(graph, nEdges))
-            clusterGraph.addEdge(edge);
+        KruskalMST mst = new KruskalMST(graph);
+        start = lap(MST_TIME, start, allocated);
+        allocated = Metrics.allocatedBytes();
 
-        cc = new CC(clusterGraph);
+        // Kruskal's edges come out in increasing order, so the clusters
+        // are the components of the first m - k of them
+        UF uf = new UF(nvertices);
+        int joined = 0;
+        for (Edge edge : mst.edges()) {
+            if (joined++ == localength - k) break;
+            int v = edge.either();
+            uf.union(v, edge.other(v));
+        }
+        int[] clusters = components(uf, nvertices);
+        lap(COMPONENTS_TIME, start, allocated);
+        return clusters;
+    }
+
+    // clusters from the Euclidean MST: join the m - k shortest tree edges
+    private static int[] planarClusters(Point2D[] locations, int k) {
+        return new ClusterHierarchy(locations).assignment(k);
+    }
+
+    // record a phase that began at start with allocated bytes so far;
+    // returns the time the next phase starts
+    static long lap(Metrics.Timer timer, long start, long allocated) {
+        long now = System.nanoTime();
+        timer.record(now - start, allocated < 0 ? -1 : Metrics.allocatedBytes() - allocated);
+        return now;
     }
 
     // null validate objects
-    private void inrange(Object object) {
+    private static void inrange(Object object) {
         if (object == null)
             throw new IllegalArgumentException("the input should not be null");
     }
 
 
     // validate dimension of index
-    private void inrange2(int k) {
+    private static void inrange2(int k, int nLocations) {
         if (k < 1 || k > nLocations)
             throw new IllegalArgumentException("the number od clusters is invalid");
     }
 
 
-    // returns a collection of edges representing cluster
-    private Iterable<Edge> getClusters(EdgeWeightedGraph g, int n) {
-        // Compute the minimum spanning tree of the graph
-        KruskalMST mst = new KruskalMST(g);
-
-
-        //! these edges are already in increasing
-        // order so no need to use pq???????
-        MaxPQ<Edge> pq = new MaxPQ<>();
-        for (Edge edge : mst.edges()) {
-            pq.insert(edge);
-            if (pq.size() > n)
-                pq.delMax();
+    // component of every vertex of uf, numbered in order of each
+    // component's first vertex (the numbering CC uses)
+    static int[] components(UF uf, int n) {
+        int[] rootId = new int[n];
+        Arrays.fill(rootId, -1);
+        int[] clusters = new int[n];
+        int count = 0;
+        for (int v = 0; v < n; v++) {
+            int root = uf.find(v);
+            if (rootId[root] < 0) rootId[root] = count++;
+            clusters[v] = rootId[root];
         }
-        return pq;
+        return clusters;
     }
 
     // return the cluster of the ith point
     public int clusterOf(int i) {
-        if (i < 0 || i > nLocations)
+        if (i < 0 || i >= nLocations)
             throw new IllegalArgumentException("invalid cluster index");
-        return cc.id(i);
+        if (byteIds != null) return byteIds[i] & 0xFF;
+        if (shortIds != null) return shortIds[i] & 0xFFFF;
+        return ids[i];
+    }
+
+    // number of clusters
+    public int clusterCount() {
+        return clusterSize;
+    }
+
+    // number of locations
+    public int locationCount() {
+        return nLocations;
     }
 
     // use the clusters to reduce the dimensions of an input
     public int[] reduceDimensions(int[] input) {
+        int[] output = new int[clusterSize];
+        reduceDimensions(input, output);
+        return output;
+    }
+
+    // same as above, writing the k cluster sums into output
+    public void reduceDimensions(int[] input, int[] output) {
         inrange(input);
+        inrange(output);
         if (input.length != nLocations)
             throw new IllegalArgumentException("invalid input length ");
-        int[] output = new int[clusterSize];
-        for (int i = 0; i < input.length; i++) {
-            int cluster = clusterOf(i);
-            output[cluster] += input[i];
+        if (output.length != clusterSize)
+            throw new IllegalArgumentException("invalid output length ");
+        reduce(input, output);
+    }
+
+    // Same as above for a sparse row: location index[p] holds value[p] for
+    // from <= p < to, every other location holds 0. Only those entries are
+    // read, so the cost is O(to - from + k) rather than O(m).
+    public void reduceDimensions(int[] index, int[] value, int from, int to, int[] output) {
+        inrange(index);
+        inrange(value);
+        inrange(output);
+        if (from < 0 || from > to || to > index.length || to > value.length)
+            throw new IllegalArgumentException("invalid entry range ");
+        if (output.length != clusterSize)
+            throw new IllegalArgumentException("invalid output length ");
+        for (int p = from; p < to; p++)
+            if (index[p] < 0 || index[p] >= nLocations)
+                throw new IllegalArgumentException("invalid location index ");
+        Arrays.fill(output, 0);
+        if (byteIds != null) {
+            for (int p = from; p < to; p++)
+                output[byteIds[index[p]] & 0xFF] += value[p];
         }
-        return output;
+        else if (shortIds != null) {
+            for (int p = from; p < to; p++)
+                output[shortIds[index[p]] & 0xFFFF] += value[p];
+        }
+        else {
+            for (int p = from; p < to; p++)
+                output[ids[index[p]]] += value[p];
+        }
+    }
+
+    // reduce every row of batch into the matching row of out, reusing the
+    // caller's buffers
+    public void reduceDimensions(int[][] batch, int[][] out) {
+        inrange(batch);
+        inrange(out);
+        if (batch.length != out.length)
+            throw new IllegalArgumentException("batch and output sizes differ");
+        for (int i = 0; i < batch.length; i++)
+            reduceDimensions(batch[i], out[i]);
     }
 
+    // sum input into its clusters; lengths already checked
+    private void reduce(int[] input, int[] output) {
+        Arrays.fill(output, 0);
+        if (byteIds != null) {
+            for (int i = 0; i < nLocations; i++)
+                output[byteIds[i] & 0xFF] += input[i];
+        }
+        else if (shortIds != null) {
+            for (int i = 0; i < nLocations; i++)
+                output[shortIds[i] & 0xFFFF] += input[i];
+        }
+        else {
+            for (int i = 0; i < nLocations; i++)
+                output[ids[i]] += input[i];
+        }
+    }
+
+
+    // Compare cluster ids, for every k, of m random locations on a side x
+    // side integer grid, where many distances tie and some locations
+    // coincide, with the original path: the complete graph's KruskalMST,
+    // its m - k smallest edges kept in a MaxPQ, and CC over them. With a
+    // tie between the (m - k)th and the next tree edge the partition
+    // depends on which tied edge is kept (for the original path, on the
+    // heap's order), so those k are counted apart and every result is
+    // only checked to be a single-linkage cut.
+    private static void gridCheck(int m, int side) {
+        Random random = new Random(m);
+        Point2D[] points = new Point2D[m];
+        for (int i = 0; i < m; i++)
+            points[i] = new Point2D(random.nextInt(side), random.nextInt(side));
+
+        EdgeWeightedGraph graph = new EdgeWeightedGraph(m);
+        for (int i = 0; i < m; i++)
+            for (int j = i + 1; j < m; j++)
+                graph.addEdge(new Edge(i, j, points[i].distanceSquaredTo(points[j])));
+        Iterable<Edge> tree = new KruskalMST(graph).edges();
+        double[] lengths = new double[m - 1];
+        int e = 0;
+        for (Edge edge : tree)
+            lengths[e++] = edge.weight();
+
+        // per k without and with a tie: planar and all-pairs ids unlike
+        // MaxPQ/CC, and planar, all-pairs and MaxPQ/CC cuts that are not
+        // single-linkage
+        int tied = 0;
+        int[][] differ = new int[2][2];
+        int[][] invalid = new int[2][3];
+        for (int k = 1; k <= m; k++) {
+            MaxPQ<Edge> pq = new MaxPQ<>();
+            for (Edge edge : tree) {
+                pq.insert(edge);
+                if (pq.size() > m - k)
+                    pq.delMax();
+            }
+            EdgeWeightedGraph clusterGraph = new EdgeWeightedGraph(m);
+            for (Edge edge : pq)
+                clusterGraph.addEdge(edge);
+            CC cc = new CC(clusterGraph);
+
+            Clustering planar = new Clustering(points, k);
+            Clustering allPairs = new Clustering(points, k, true);
+            int[][] ids = new int[3][m];
+            for (int i = 0; i < m; i++) {
+                ids[0][i] = planar.clusterOf(i);
+                ids[1][i] = allPairs.clusterOf(i);
+                ids[2][i] = cc.id(i);
+            }
+
+            boolean tie = k > 1 && k < m && lengths[m - k - 1] == lengths[m - k];
+            if (tie) tied++;
+            int t = tie ? 1 : 0;
+            double cut = k == m ? -1 : lengths[m - k - 1];
+            for (int c = 0; c < 3; c++) {
+                if (c < 2 && !Arrays.equals(ids[c], ids[2])) differ[t][c]++;
+                if (!singleLinkage(ids[c], k, tree, cut)) invalid[t][c]++;
+            }
+        }
+        StdOut.println((m - tied) + " k without a tie at the cut: ids unlike MaxPQ/CC at "
+                               + differ[0][0] + " planar, " + differ[0][1] + " all pairs");
+        StdOut.println(tied + " k with a tie at the cut: ids unlike MaxPQ/CC at "
+                               + differ[1][0] + " planar, " + differ[1][1] + " all pairs");
+        StdOut.println("cuts that are not single-linkage: " + (invalid[0][0] + invalid[1][0])
+                               + " planar, " + (invalid[0][1] + invalid[1][1]) + " all pairs, "
+                               + (invalid[0][2] + invalid[1][2]) + " MaxPQ/CC");
+    }
+
+    // whether ids, k clusters, is a single-linkage cut of the tree at
+    // length cut: every shorter tree edge joins, and no cluster spans a
+    // longer one
+    private static boolean singleLinkage(int[] ids, int k, Iterable<Edge> tree, double cut) {
+        UF joined = new UF(ids.length);
+        for (Edge edge : tree) {
+            int v = edge.either();
+            int w = edge.other(v);
+            if (edge.weight() < cut && ids[v] != ids[w]) return false;
+            if (edge.weight() <= cut) joined.union(v, w);
+        }
+        int[] root = new int[k];
+        Arrays.fill(root, -1);
+        for (int i = 0; i < ids.length; i++) {
+            int r = joined.find(i);
+            if (root[ids[i]] < 0) root[ids[i]] = r;
+            else if (root[ids[i]] != r) return false;
+        }
+        for (int r : root)
+            if (r < 0) return false;
+        return true;
+    }
 
     // unit testing (required)
+    // with args m k: compare the planar and all-pairs clusterings of m
+    // random locations
+    // with args grid m side: compare both with the original MaxPQ and CC
+    // path on m locations of a side x side grid, for every k
     public static void main(String[] args) {
 
+        if (args.length >= 3 && args[0].equals("grid")) {
+            gridCheck(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+
+        if (args.length >= 2) {
+            int m = Integer.parseInt(args[0]);
+            int k = Integer.parseInt(args[1]);
+            Random random = new Random(m);
+            Point2D[] points = new Point2D[m];
+            for (int i = 0; i < m; i++)
+                points[i] = new Point2D(random.nextDouble(), random.nextDouble());
+
+            Stopwatch watch = new Stopwatch();
+            Clustering planar = new Clustering(points, k);
+            StdOut.println("planar    " + watch.elapsedTime());
+            watch = new Stopwatch();
+            Clustering reference = new Clustering(points, k, true);
+            StdOut.println("all pairs " + watch.elapsedTime());
+
+            int same = 0;
+            for (int i = 0; i < m; i++)
+                if (planar.clusterOf(i) == reference.clusterOf(i)) same++;
+            StdOut.println(same + " of " + m + " locations agree");
+            return;
+        }
+
         // Example usage:
         Point2D[] locations = {
                 new Point2D(0, 0), new Point2D(1, 1),
@@ -0,0 +1,234 @@
+import edu.princeton.cs.algs4.StdOut;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CompiledEnsemble {
+
+    // length of the reduced vectors the stumps read
+    private final int dims;
+
+    // stump t predicts sign[t] when x[dimension[t]] <= value[t],
+    // and the other label otherwise
+    private final int[] dimension;
+    private final int[] value;
+    private final int[] sign;
+
+    // vote weight of each stump, or null when every stump has one vote; a
+    // stump worse than chance on its weighted rows has a negative weight,
+    // so its vote counts for the other label
+    private final double[] alpha;
+
+    // remaining[t] is the total absolute vote weight of stumps t and
+    // later, the most they can still move the margin; once the margin so
+    // far outweighs it the prediction cannot change
+    private final double[] remaining;
+
+    // early exits need the margin to clear the remaining weight by this
+    // much, so rounding in the two sums cannot change a prediction
+    private final double slack;
+
+    // pack the trained learners into parallel arrays; dims is the length
+    // of the reduced vectors they were trained on
+    public CompiledEnsemble(List<WeakLearner> learners, int dims) {
+        this(learners, null, dims);
+    }
+
+    // same as above, with stump t voting with weight alphas[t]; a null
+    // alphas gives every stump one vote
+    public CompiledEnsemble(List<WeakLearner> learners, double[] alphas, int dims) {
+        this(dimensions(learners), values(learners), signs(learners), alphas, dims);
+    }
+
+    // rebuild an ensemble from its packed arrays, such as ones read back
+    // from a saved model
+    CompiledEnsemble(int[] dimension, int[] value, int[] sign, int dims) {
+        this(dimension, value, sign, null, dims);
+    }
+
+    // same as above, with vote weights; alpha may be longer than the
+    // stump arrays (only the first dimension.length are used) or null
+    CompiledEnsemble(int[] dimension, int[] value, int[] sign, double[] alpha, int dims) {
+        if (dimension == null || value == null || sign == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        if (value.length != dimension.length || sign.length != dimension.length)
+            throw new IllegalArgumentException("stump arrays differ in length");
+        if (alpha != null && alpha.length < dimension.length)
+            throw new IllegalArgumentException("stump arrays differ in length");
+        if (dims < 1)
+            throw new IllegalArgumentException("invalid number of dimensions");
+        int t = dimension.length;
+        for (int s = 0; s < t; s++) {
+            if (dimension[s] < 0 || dimension[s] >= dims)
+                throw new IllegalArgumentException("invalid stump dimension");
+            if (sign[s] != 0 && sign[s] != 1)
+                throw new IllegalArgumentException("invalid stump sign");
+            if (alpha != null && !(Math.abs(alpha[s]) < Double.POSITIVE_INFINITY))
+                throw new IllegalArgumentException("invalid stump weight");
+        }
+        this.dims = dims;
+        this.dimension = dimension.clone();
+        this.value = value.clone();
+        this.sign = sign.clone();
+        if (alpha == null) {
+            this.alpha = null;
+            this.remaining = null;
+            this.slack = 0;
+        }
+        else {
+            this.alpha = Arrays.copyOf(alpha, t);
+            this.remaining = new double[t + 1];
+            for (int s = t - 1; s >= 0; s--)
+                remaining[s] = remaining[s + 1] + Math.abs(this.alpha[s]);
+            this.slack = 1e-9 * remaining[0];
+        }
+    }
+
+    private static int[] dimensions(List<WeakLearner> learners) {
+        if (learners == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        int[] dimension = new int[learners.size()];
+        for (int t = 0; t < dimension.length; t++)
+            dimension[t] = learners.get(t).dimensionPredictor();
+        return dimension;
+    }
+
+    private static int[] values(List<WeakLearner> learners) {
+        if (learners == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        int[] value = new int[learners.size()];
+        for (int t = 0; t < value.length; t++)
+            value[t] = learners.get(t).valuePredictor();
+        return value;
+    }
+
+    private static int[] signs(List<WeakLearner> learners) {
+        if (learners == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        int[] sign = new int[learners.size()];
+        for (int t = 0; t < sign.length; t++)
+            sign[t] = learners.get(t).signPredictor();
+        return sign;
+    }
+
+    // number of stumps
+    public int size() {
+        return dimension.length;
+    }
+
+    // length of the reduced vectors
+    public int dimensions() {
+        return dims;
+    }
+
+    // dimension read by stump t
+    public int dimensionOf(int t) {
+        return dimension[t];
+    }
+
+    // threshold of stump t
+    public int valueOf(int t) {
+        return value[t];
+    }
+
+    // label stump t predicts at or below its threshold
+    public int signOf(int t) {
+        return sign[t];
+    }
+
+    // whether the stumps carry vote weights
+    public boolean isWeighted() {
+        return alpha != null;
+    }
+
+    // vote weight of stump t, 1 when the stumps are unweighted
+    public double alphaOf(int t) {
+        if (t < 0 || t >= dimension.length)
+            throw new IndexOutOfBoundsException("invalid stump index");
+        return alpha == null ? 1.0 : alpha[t];
+    }
+
+    // number of stumps voting 1 for a reduced sample
+    public int votes(int[] reduced) {
+        if (reduced == null || reduced.length != dims)
+            throw new IllegalArgumentException("sample invalid");
+        int ones = 0;
+        for (int t = 0; t < dimension.length; t++) {
+            // above the threshold the stump flips its sign
+            int above = reduced[dimension[t]] <= value[t] ? 0 : 1;
+            ones += sign[t] ^ above;
+        }
+        return ones;
+    }
+
+    // Weighted margin of a reduced sample: the vote weight of the stumps
+    // voting 1 minus that of the stumps voting 0. Unweighted, this is
+    // 2 * votes(reduced) - size().
+    public double margin(int[] reduced) {
+        if (alpha == null)
+            return 2 * votes(reduced) - dimension.length;
+        if (reduced == null || reduced.length != dims)
+            throw new IllegalArgumentException("sample invalid");
+        double margin = 0;
+        for (int t = 0; t < dimension.length; t++) {
+            int above = reduced[dimension[t]] <= value[t] ? 0 : 1;
+            margin += (sign[t] ^ above) == 1 ? alpha[t] : -alpha[t];
+        }
+        return margin;
+    }
+
+    // weighted vote for a reduced sample (1 when the margin is positive,
+    // so a tie predicts 0), stopping as soon as the stumps left cannot
+    // change it
+    public int predict(int[] reduced) {
+        return scan(reduced) & 1;
+    }
+
+    // number of stumps predict() evaluates for a reduced sample
+    public int stumpsEvaluated(int[] reduced) {
+        return scan(reduced) >>> 1;
+    }
+
+    // stumps evaluated << 1 | predicted label
+    private int scan(int[] reduced) {
+        if (reduced == null || reduced.length != dims)
+            throw new IllegalArgumentException("sample invalid");
+        int t = 0;
+        int n = dimension.length;
+        if (alpha == null) {
+            // 1 once more than half the stumps vote 1, 0 once at least
+            // half of them cannot
+            int ones = 0;
+            while (t < n) {
+                int above = reduced[dimension[t]] <= value[t] ? 0 : 1;
+                ones += sign[t] ^ above;
+                t++;
+                if (2 * ones > n) return t << 1 | 1;
+                if (2 * (ones + n - t) <= n) return t << 1;
+            }
+            return t << 1;
+        }
+        double margin = 0;
+        while (t < n) {
+            int above = reduced[dimension[t]] <= value[t] ? 0 : 1;
+            margin += (sign[t] ^ above) == 1 ? alpha[t] : -alpha[t];
+            t++;
+            if (margin - remaining[t] > slack) return t << 1 | 1;
+            if (margin + remaining[t] < -slack) return t << 1;
+        }
+        return t << 1 | (margin > 0 ? 1 : 0);
+    }
+
+    // unit testing
+    public static void main(String[] args) {
+        int[][] input = { { 1, 5 }, { 2, 4 }, { 3, 3 }, { 4, 2 } };
+        int[] labels = { 0, 0, 1, 1 };
+        double[] weights = { 0.25, 0.25, 0.25, 0.25 };
+        List<WeakLearner> learners = new ArrayList<>();
+        learners.add(new WeakLearner(input, weights, labels));
+        CompiledEnsemble ensemble = new CompiledEnsemble(learners, 2);
+        for (int[] sample : input)
+            StdOut.println(ensemble.predict(sample));
+    }
+}
@@ -0,0 +1,227 @@
+import edu.princeton.cs.algs4.Point2D;
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class CrossValidation {
+
+    // Seeded k-fold cross-validation of a boosting model. The locations are
+    // clustered and every row reduced once; each fold is then a set of
+    // row indices, and its training set an array of references to the
+    // shared reduced rows until its model packs them into its own
+    // TrainingMatrix; no raw input is copied. Folds train concurrently
+    // on a fixed pool of threads. An ensemble after t rounds is the first t
+    // learners of the final one, so one pass over each held-out row's
+    // stumps scores every round count. Each fold's result depends only on
+    // the seed and is combined in fold order, so the results are the same
+    // for any number of threads.
+
+    // number of folds and of rounds trained per fold
+    private final int folds;
+    private final int rounds;
+
+    // held-out rows of fold f that the first t learners label correctly,
+    // and the size of each fold
+    private final int[][] correct;
+    private final int[] foldSize;
+
+    // number of rows
+    private final int n;
+
+    // cross-validate k clusters and up to rounds rounds over folds folds,
+    // using threads threads
+    public CrossValidation(int[][] input, int[] labels, Point2D[] locations, int k,
+                           int folds, int rounds, long seed, int threads) {
+        this(input, labels, clusteringOf(locations, k), folds, rounds, seed, threads);
+    }
+
+    // same as above with the locations already clustered, such as one cut
+    // of a ClusterHierarchy when several k are tried
+    public CrossValidation(int[][] input, int[] labels, Clustering clustering,
+                           int folds, int rounds, long seed, int threads) {
+        if (input == null || labels == null || clustering == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        if (input.length != labels.length)
+            throw new IllegalArgumentException("number of labels is invalid");
+        if (folds < 2 || folds > input.length)
+            throw new IllegalArgumentException("number of folds is invalid");
+        if (rounds < 0)
+            throw new IllegalArgumentException("number of rounds is invalid");
+        if (threads < 1)
+            throw new IllegalArgumentException("number of threads is invalid");
+
+        this.folds = folds;
+        this.rounds = rounds;
+        n = input.length;
+
+        int[][] reduced = new int[n][clustering.clusterCount()];
+        clustering.reduceDimensions(input, reduced);
+
+        // a seeded shuffle; fold f is positions [f n / folds, (f + 1) n / folds)
+        int[] fold = new int[n];
+        int[] position = new int[n];
+        for (int i = 0; i < n; i++)
+            position[i] = i;
+        Random random = new Random(seed);
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = position[i];
+            position[i] = position[j];
+            position[j] = t;
+        }
+        foldSize = new int[folds];
+        for (int p = 0; p < n; p++) {
+            int f = (int) ((long) p * folds / n);
+            fold[position[p]] = f;
+            foldSize[f]++;
+        }
+
+        correct = new int[folds][];
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, folds));
+        try {
+            List<Future<int[]>> results = new ArrayList<>();
+            for (int f = 0; f < folds; f++) {
+                int held = f;
+                results.add(executor.submit(() -> runFold(clustering, reduced, labels,
+                                                          fold, held)));
+            }
+            for (int f = 0; f < folds; f++)
+                correct[f] = results.get(f).get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("cross-validation interrupted", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Clustering clusteringOf(Point2D[] locations, int k) {
+        if (locations == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        return new Clustering(locations, k);
+    }
+
+    // train on every fold but held, in row order, and count the held-out
+    // rows each prefix of the ensemble gets right
+    private int[] runFold(Clustering clustering, int[][] reduced, int[] labels,
+                          int[] fold, int held) {
+        int testSize = 0;
+        for (int f : fold)
+            if (f == held) testSize++;
+        int[][] trainRows = new int[n - testSize][];
+        int[] trainLabels = new int[n - testSize];
+        int[][] testRows = new int[testSize][];
+        int[] testLabels = new int[testSize];
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < n; i++) {
+            if (fold[i] == held) {
+                testRows[b] = reduced[i];
+                testLabels[b++] = labels[i];
+            }
+            else {
+                trainRows[a] = reduced[i];
+                trainLabels[a++] = labels[i];
+            }
+        }
+
+        BoostingAlgorithm model = BoostingAlgorithm.ofReduced(clustering, trainRows,
+                                                              trainLabels, 0);
+        for (int t = 0; t < rounds; t++)
+            model.iterate();
+        CompiledEnsemble ensemble = model.compile();
+
+        // the margin after each stump, summed in stump order as predict()
+        // does; a zero margin predicts 0
+        int[] hits = new int[rounds + 1];
+        for (int j = 0; j < testSize; j++) {
+            int[] row = testRows[j];
+            double margin = 0;
+            if (testLabels[j] == 0) hits[0]++;
+            for (int t = 0; t < rounds; t++) {
+                int above = row[ensemble.dimensionOf(t)] <= ensemble.valueOf(t) ? 0 : 1;
+                double alpha = ensemble.alphaOf(t);
+                margin += (ensemble.signOf(t) ^ above) == 1 ? alpha : -alpha;
+                if ((margin > 0 ? 1 : 0) == testLabels[j]) hits[t + 1]++;
+            }
+        }
+        return hits;
+    }
+
+    // number of folds
+    public int folds() {
+        return folds;
+    }
+
+    // number of rounds trained per fold
+    public int rounds() {
+        return rounds;
+    }
+
+    // held-out accuracy over all folds of the first t learners
+    public double accuracy(int t) {
+        if (t < 0 || t > rounds)
+            throw new IllegalArgumentException("invalid number of rounds");
+        long hits = 0;
+        for (int f = 0; f < folds; f++)
+            hits += correct[f][t];
+        return (double) hits / n;
+    }
+
+    // held-out accuracy on fold f of the first t learners
+    public double foldAccuracy(int f, int t) {
+        if (f < 0 || f >= folds)
+            throw new IllegalArgumentException("invalid fold");
+        if (t < 0 || t > rounds)
+            throw new IllegalArgumentException("invalid number of rounds");
+        return (double) correct[f][t] / foldSize[f];
+    }
+
+    // the round count with the best accuracy, the smallest on ties
+    public int bestRounds() {
+        int best = 0;
+        for (int t = 1; t <= rounds; t++)
+            if (accuracy(t) > accuracy(best)) best = t;
+        return best;
+    }
+
+    // usage: java CrossValidation data.txt folds rounds seed threads k [k ...]
+    public static void main(String[] args) {
+        DataSet data = new DataSet(args[0]);
+        int folds = Integer.parseInt(args[1]);
+        int rounds = Integer.parseInt(args[2]);
+        long seed = Long.parseLong(args[3]);
+        int threads = Integer.parseInt(args[4]);
+        int[][] input = data.getInput();
+        int[] labels = data.getLabels();
+        Point2D[] locations = data.getLocations();
+
+        // one spanning tree, cut once per k
+        ClusterHierarchy hierarchy = new ClusterHierarchy(locations);
+        for (String arg : Arrays.asList(args).subList(5, args.length)) {
+            int k = Integer.parseInt(arg);
+            Stopwatch watch = new Stopwatch();
+            CrossValidation cv = new CrossValidation(input, labels, hierarchy.clustering(k),
+                                                     folds, rounds, seed, threads);
+            int best = cv.bestRounds();
+            StdOut.printf("k %4d  best rounds %4d  accuracy %.4f  (at %d rounds %.4f)  %.2f s%n",
+                          k, best, cv.accuracy(best), rounds, cv.accuracy(rounds),
+                          watch.elapsedTime());
+        }
+    }
+}
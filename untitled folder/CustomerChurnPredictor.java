@@ -2,96 +2,152 @@ import edu.princeton.cs.algs4.Point2D;
 import edu.princeton.cs.algs4.StdOut;
 import edu.princeton.cs.algs4.Stopwatch;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
 
 public class CustomerChurnPredictor {
 
-    private Clustering clustering;
-    private double[] customerWeights;
-    private int[][] customerFeatures;
-    private int[] churnLabels;
-    private ArrayList<WeakLearner> weakLearners;
-    private final int numCustomers;
+    // Trains and scores the churn model; every round and every prediction
+    // goes through the engine, so this class only adapts the churn API.
+    private final BoostingEngine engine;
     private final int numFeatures;
 
     public CustomerChurnPredictor(int[][] customerData, int[] churnHistory,
                                   Point2D[] customerAttributes, int numClusters) {
-        validate(customerData);
-        validate(churnHistory);
-        validate(customerAttributes);
-        validate(customerData, churnHistory);
+        this(customersOf(customerData, churnHistory), churnHistory,
+             customerAttributes, numClusters);
+    }
 
-        numCustomers = customerData.length;
-        numFeatures = customerAttributes.length;
+    // Streams the raw customer rows: each row is reduced through the
+    // clustering as it arrives and never kept, so the iterator may reuse
+    // its buffer (as BinaryDataSet.rows() does).
+    public CustomerChurnPredictor(Iterator<int[]> customerRows, int[] churnHistory,
+                                  Point2D[] customerAttributes, int numClusters) {
+        this(engineOf(customerRows, churnHistory, customerAttributes, numClusters));
+    }
 
-        clustering = new Clustering(customerAttributes, numClusters);
-        customerFeatures = new int[numCustomers][numClusters];
-        churnLabels = churnHistory.clone();
+    public CustomerChurnPredictor(CustomerDataset customers, int numClusters) {
+        this(customersOf(customers), customers.getChurnHistory(),
+             customers.getCustomerAttributes(), numClusters);
+    }
 
-        customerWeights = new double[numCustomers];
-        weakLearners = new ArrayList<>();
+    // Uses an engine configured elsewhere, e.g. a BoostingAlgorithm with
+    // binning, alpha weighting or subsampling switched on
+    public CustomerChurnPredictor(BoostingEngine engine) {
+        validate(engine);
+        this.engine = engine;
+        numFeatures = engine.getClustering().locationCount();
+    }
 
-        // Initialize weights
-        for (int i = 0; i < numCustomers; i++)
-            customerWeights[i] = 1.0 / numCustomers;
+    private static BoostingEngine engineOf(Iterator<int[]> customerRows, int[] churnHistory,
+                                           Point2D[] customerAttributes, int numClusters) {
+        validate(customerRows);
+        validate(churnHistory);
+        validate(customerAttributes);
+        validateLabels(churnHistory);
+        return new BoostingAlgorithm(customerRows, churnHistory, customerAttributes,
+                                     numClusters);
+    }
 
-        // Reduce dimensions of customer data
-        for (int i = 0; i < numCustomers; i++)
-            customerFeatures[i] = clustering.reduceDimensions(customerData[i]);
+    private static Iterator<int[]> customersOf(int[][] customerData, int[] churnHistory) {
+        validate(customerData);
+        validate(churnHistory);
+        validate(customerData, churnHistory);
+        return Arrays.asList(customerData).iterator();
+    }
+
+    private static Iterator<int[]> customersOf(CustomerDataset customers) {
+        validate(customers);
+        return customersOf(customers.getCustomerData(), customers.getChurnHistory());
     }
 
     // Validation methods
-    private void validate(Object object) {
+    private static void validate(Object object) {
         if (object == null)
             throw new IllegalArgumentException("Input cannot be null");
     }
 
-    private void validate(int[][] input, int[] labels) {
+    private static void validate(int[][] input, int[] labels) {
         if (input.length != labels.length)
             throw new IllegalArgumentException(
                     "Number of customers does not match number of labels");
+        validateLabels(labels);
+    }
+
+    private static void validateLabels(int[] labels) {
         for (int label : labels) {
             if (label != 0 && label != 1)
                 throw new IllegalArgumentException("Invalid label: must be 0 or 1");
         }
     }
 
+    public BoostingEngine getEngine() {
+        return engine;
+    }
+
     public double getCustomerWeight(int customerIndex) {
-        return customerWeights[customerIndex];
+        return engine.weightOf(customerIndex);
     }
 
     public void trainIteration() {
-        WeakLearner learner = new WeakLearner(customerFeatures, customerWeights, churnLabels);
-
-        double totalWeight = 0.0;
-        for (int i = 0; i < numCustomers; i++) {
-            int prediction = learner.predict(customerFeatures[i]);
-            if (prediction != churnLabels[i])
-                customerWeights[i] *= 2.0;  // Increase weight for misclassified customers
-            totalWeight += customerWeights[i];
-        }
+        engine.iterate();
+    }
+
+    // Adds a batch of new customers to the trained model; they are weighted
+    // as if trained on from the start, and later iterations train on them
+    public void addCustomers(int[][] customerData, int[] churnHistory) {
+        validate(customerData);
+        validate(churnHistory);
+        validate(customerData, churnHistory);
+        engine.append(customerData, churnHistory);
+    }
 
-        // Normalize weights
-        for (int i = 0; i < numCustomers; i++)
-            customerWeights[i] /= totalWeight;
+    // Training error of the first rounds learners, from their stored
+    // misclassification sets
+    public double trainingError(int rounds) {
+        return engine.trainingError(rounds);
+    }
 
-        weakLearners.add(learner);
+    // Packs the learners trained so far for allocation-free scoring
+    public CompiledEnsemble compile() {
+        return engine.compile();
+    }
+
+    // Freezes the clustering and stumps into an immutable scoring model
+    public ChurnModel toModel() {
+        return engine.toModel();
+    }
+
+    public void save(String filename) {
+        toModel().save(filename);
+    }
+
+    public Clustering getClustering() {
+        return engine.getClustering();
     }
 
     public boolean predictChurn(int[] customerData) {
         validate(customerData);
         if (numFeatures != customerData.length)
             throw new IllegalArgumentException("Invalid number of customer features");
+        return engine.predict(customerData) == 1;
+    }
 
-        int[] reducedFeatures = clustering.reduceDimensions(customerData);
-        int churnVotes = 0, retainVotes = 0;
-
-        for (WeakLearner learner : weakLearners) {
-            if (learner.predict(reducedFeatures) == 1) churnVotes++;
-            else retainVotes++;
-        }
+    // Scores a batch of customers in blocks on the common pool
+    public boolean[] predictChurnAll(int[][] customers) {
+        return predictChurnAll(customers, ForkJoinPool.commonPool());
+    }
 
-        return churnVotes > retainVotes;
+    public boolean[] predictChurnAll(int[][] customers, ForkJoinPool pool) {
+        validate(customers);
+        int[] predictions = engine.predictAll(customers, pool);
+        boolean[] churn = new boolean[predictions.length];
+        for (int i = 0; i < predictions.length; i++)
+            churn[i] = predictions[i] == 1;
+        return churn;
     }
 
     public static void main(String[] args) {
@@ -101,17 +157,12 @@ public class CustomerChurnPredictor {
         int numClusters = Integer.parseInt(args[2]);
         int numIterations = Integer.parseInt(args[3]);
 
-        // Load data (you'll need to implement these methods)
+        // Load data
         CustomerDataset trainingData = CustomerDataset.loadFromFile(trainingDataFile);
         CustomerDataset testingData = CustomerDataset.loadFromFile(testingDataFile);
 
         Stopwatch watch = new Stopwatch();
-        CustomerChurnPredictor model = new CustomerChurnPredictor(
-                trainingData.getCustomerData(),
-                trainingData.getChurnHistory(),
-                trainingData.getCustomerAttributes(),
-                numClusters
-        );
+        CustomerChurnPredictor model = new CustomerChurnPredictor(trainingData, numClusters);
 
         // Train the model
         for (int i = 0; i < numIterations; i++)
@@ -119,29 +170,69 @@ public class CustomerChurnPredictor {
 
         // Evaluate the model
         int correctPredictions = 0;
-        for (int i = 0; i < testingData.getCustomerData().length; i++) {
-            boolean predictedChurn = model.predictChurn(testingData.getCustomerData()[i]);
-            boolean actualChurn = testingData.getChurnHistory()[i] == 1;
+        int[] churnHistory = testingData.getChurnHistory();
+        boolean[] predictions = model.predictChurnAll(testingData.getCustomerData());
+        for (int i = 0; i < predictions.length; i++) {
+            boolean predictedChurn = predictions[i];
+            boolean actualChurn = churnHistory[i] == 1;
             if (predictedChurn == actualChurn)
                 correctPredictions++;
         }
-        double accuracy = (double) correctPredictions / testingData.getCustomerData().length;
+        double accuracy = (double) correctPredictions / predictions.length;
 
         StdOut.println("Training time: " + watch.elapsedTime() + " seconds");
         StdOut.println("Model accuracy: " + accuracy);
     }
 }
 
-// Placeholder for CustomerDataset class
+// Customers in the DataSet file layout: n m, the m location coordinates,
+// the n churn labels, then n rows of m activity counts. Read in one
+// buffered pass; the getters return the arrays read, not copies.
 class CustomerDataset {
-    private int[][] customerData;
-    private int[] churnHistory;
-    private Point2D[] customerAttributes;
+    private final int[][] customerData;
+    private final int[] churnHistory;
+    private final Point2D[] customerAttributes;
+
+    private CustomerDataset(int[][] customerData, int[] churnHistory,
+                            Point2D[] customerAttributes) {
+        this.customerData = customerData;
+        this.churnHistory = churnHistory;
+        this.customerAttributes = customerAttributes;
+    }
 
     public static CustomerDataset loadFromFile(String filename) {
-        // Implement file loading logic here
-        // For now, return a dummy dataset
-        return new CustomerDataset();
+        if (filename == null)
+            throw new IllegalArgumentException("Input cannot be null");
+        try (BinaryDataSet.Tokens in = new BinaryDataSet.Tokens(filename)) {
+            int n = in.nextInt();
+            int m = in.nextInt();
+            if (n < 0 || m < 1)
+                throw new IllegalArgumentException("Invalid data set sizes");
+
+            Point2D[] attributes = new Point2D[m];
+            for (int j = 0; j < m; j++) {
+                double x = in.nextDouble();
+                double y = in.nextDouble();
+                attributes[j] = new Point2D(x, y);
+            }
+
+            int[] churn = new int[n];
+            for (int i = 0; i < n; i++)
+                churn[i] = in.nextInt();
+
+            int[][] data = new int[n][m];
+            for (int i = 0; i < n; i++)
+                for (int j = 0; j < m; j++)
+                    data[i][j] = in.nextInt();
+            return new CustomerDataset(data, churn, attributes);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int size() {
+        return churnHistory.length;
     }
 
     public int[][] getCustomerData() {
@@ -155,13 +246,4 @@ class CustomerDataset {
     public Point2D[] getCustomerAttributes() {
         return customerAttributes;
     }
-
-
-    // Placeholder for WeakLearner class
-
-
-    public int[] reduceDimensions(int[] input) {
-        // Implement dimension reduction
-        return new int[] { 0 }; // Dummy return
-    }
 }
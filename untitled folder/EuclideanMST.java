@@ -0,0 +1,297 @@
+import edu.princeton.cs.algs4.Point2D;
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.Stopwatch;
+import edu.princeton.cs.algs4.UF;
+
+import java.util.Random;
+
+public class EuclideanMST {
+
+    // endpoints and squared length of the m - 1 tree edges,
+    // in increasing order of length
+    private final int[] from;
+    private final int[] to;
+    private final double[] length;
+
+    // coordinates of the points
+    private final double[] px;
+    private final double[] py;
+
+    // kd-tree: perm[lo..hi) is a subtree whose root is the point perm[mid],
+    // mid = (lo + hi) / 2, split on x when vertical[mid] and on y otherwise;
+    // every array below is indexed by mid
+    private final int[] perm;
+    private final boolean[] vertical;
+    private final double[] minX, maxX, minY, maxY;
+
+    // component shared by every point of a subtree, or -1 if mixed
+    private final int[] subtreeComp;
+
+    // component of each point for the current round
+    private final int[] comp;
+
+    // shortest edge leaving each component in the current round
+    private final double[] bestLength;
+    private final int[] bestFrom;
+    private final int[] bestTo;
+
+    // Computes the minimum spanning tree of the complete graph on points
+    // weighted by squared distance, without building that graph. Each
+    // Boruvka round finds, for every component, its nearest point in
+    // another component with a kd-tree search that skips subtrees lying
+    // inside the component or too far away; a round at least halves the
+    // number of components. Ties are broken by endpoint indices so the
+    // tree is well defined even with equal distances.
+    public EuclideanMST(Point2D[] points) {
+        if (points == null)
+            throw new IllegalArgumentException("the input should not be null");
+        int m = points.length;
+        px = new double[m];
+        py = new double[m];
+        perm = new int[m];
+        for (int i = 0; i < m; i++) {
+            if (points[i] == null)
+                throw new IllegalArgumentException("the input should not be null");
+            px[i] = points[i].x();
+            py[i] = points[i].y();
+            perm[i] = i;
+        }
+
+        vertical = new boolean[m];
+        minX = new double[m];
+        maxX = new double[m];
+        minY = new double[m];
+        maxY = new double[m];
+        subtreeComp = new int[m];
+        comp = new int[m];
+        bestLength = new double[m];
+        bestFrom = new int[m];
+        bestTo = new int[m];
+        build(0, m, true);
+
+        int edges = Math.max(m - 1, 0);
+        from = new int[edges];
+        to = new int[edges];
+        length = new double[edges];
+
+        UF uf = new UF(Math.max(m, 1));
+        int added = 0;
+        while (added < edges) {
+            for (int v = 0; v < m; v++) {
+                comp[v] = uf.find(v);
+                bestLength[v] = Double.POSITIVE_INFINITY;
+                bestFrom[v] = -1;
+            }
+            markComponents(0, m);
+
+            for (int v = 0; v < m; v++)
+                nearest(v, 0, m);
+
+            for (int c = 0; c < m; c++) {
+                if (bestFrom[c] < 0) continue;
+                int u = bestFrom[c], w = bestTo[c];
+                if (uf.find(u) == uf.find(w)) continue;
+                uf.union(u, w);
+                from[added] = Math.min(u, w);
+                to[added] = Math.max(u, w);
+                length[added] = bestLength[c];
+                added++;
+            }
+        }
+        sortEdges();
+    }
+
+    // number of tree edges
+    public int size() {
+        return length.length;
+    }
+
+    // smaller endpoint of the ith shortest tree edge
+    public int from(int i) {
+        return from[i];
+    }
+
+    // larger endpoint of the ith shortest tree edge
+    public int to(int i) {
+        return to[i];
+    }
+
+    // squared length of the ith shortest tree edge
+    public double length(int i) {
+        return length[i];
+    }
+
+    // build the kd-tree over perm[lo..hi) and its bounding boxes
+    private void build(int lo, int hi, boolean splitX) {
+        if (lo >= hi) return;
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, splitX);
+        vertical[mid] = splitX;
+        build(lo, mid, !splitX);
+        build(mid + 1, hi, !splitX);
+
+        int p = perm[mid];
+        minX[mid] = px[p];
+        maxX[mid] = px[p];
+        minY[mid] = py[p];
+        maxY[mid] = py[p];
+        if (lo < mid) grow(mid, (lo + mid) >>> 1);
+        if (mid + 1 < hi) grow(mid, (mid + 1 + hi) >>> 1);
+    }
+
+    // extend the box of node to cover the box of child
+    private void grow(int node, int child) {
+        minX[node] = Math.min(minX[node], minX[child]);
+        maxX[node] = Math.max(maxX[node], maxX[child]);
+        minY[node] = Math.min(minY[node], minY[child]);
+        maxY[node] = Math.max(maxY[node], maxY[child]);
+    }
+
+    // coordinate of point p along the split axis
+    private double coord(int p, boolean splitX) {
+        return splitX ? px[p] : py[p];
+    }
+
+    // quickselect perm[lo..hi] so the kth point is in place
+    private void select(int lo, int hi, int k, boolean splitX) {
+        while (hi > lo) {
+            double pivot = coord(perm[(lo + hi) >>> 1], splitX);
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (coord(perm[i], splitX) < pivot) i++;
+                while (coord(perm[j], splitX) > pivot) j--;
+                if (i <= j) {
+                    int swap = perm[i];
+                    perm[i] = perm[j];
+                    perm[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) hi = j;
+            else if (k >= i) lo = i;
+            else return;
+        }
+    }
+
+    // record for every subtree whether all its points share a component
+    private int markComponents(int lo, int hi) {
+        if (lo >= hi) return -2;
+        int mid = (lo + hi) >>> 1;
+        int c = comp[perm[mid]];
+        int left = markComponents(lo, mid);
+        int right = markComponents(mid + 1, hi);
+        if ((left != -2 && left != c) || (right != -2 && right != c))
+            c = -1;
+        subtreeComp[mid] = c;
+        return c;
+    }
+
+    // offer v's nearest point of another component in perm[lo..hi)
+    // as the best edge of v's component
+    private void nearest(int v, int lo, int hi) {
+        if (lo >= hi) return;
+        int mid = (lo + hi) >>> 1;
+        int c = comp[v];
+        if (subtreeComp[mid] == c) return;
+        if (boxDistance(v, mid) > bestLength[c]) return;
+
+        int p = perm[mid];
+        if (comp[p] != c) {
+            double dx = px[v] - px[p], dy = py[v] - py[p];
+            offer(c, v, p, dx * dx + dy * dy);
+        }
+
+        // search the side holding v first to shrink the bound early
+        boolean splitX = vertical[mid];
+        if (coord(v, splitX) < coord(p, splitX)) {
+            nearest(v, lo, mid);
+            nearest(v, mid + 1, hi);
+        }
+        else {
+            nearest(v, mid + 1, hi);
+            nearest(v, lo, mid);
+        }
+    }
+
+    // squared distance from v to the bounding box of a subtree
+    private double boxDistance(int v, int node) {
+        double dx = 0, dy = 0;
+        if (px[v] < minX[node]) dx = minX[node] - px[v];
+        else if (px[v] > maxX[node]) dx = px[v] - maxX[node];
+        if (py[v] < minY[node]) dy = minY[node] - py[v];
+        else if (py[v] > maxY[node]) dy = py[v] - maxY[node];
+        return dx * dx + dy * dy;
+    }
+
+    // keep edge v-w if it is shorter than the best edge of component c
+    private void offer(int c, int v, int w, double d) {
+        if (d > bestLength[c]) return;
+        int a = Math.min(v, w), b = Math.max(v, w);
+        if (d == bestLength[c] && bestFrom[c] >= 0) {
+            int bestA = Math.min(bestFrom[c], bestTo[c]);
+            int bestB = Math.max(bestFrom[c], bestTo[c]);
+            if (a > bestA || (a == bestA && b >= bestB)) return;
+        }
+        bestLength[c] = d;
+        bestFrom[c] = v;
+        bestTo[c] = w;
+    }
+
+    // order the edges by length, then by endpoints
+    private void sortEdges() {
+        int n = length.length;
+        int[] index = new int[n];
+        for (int i = 0; i < n; i++)
+            index[i] = i;
+        mergeSort(index, new int[n], 0, n);
+
+        int[] f = from.clone(), t = to.clone();
+        double[] l = length.clone();
+        for (int i = 0; i < n; i++) {
+            from[i] = f[index[i]];
+            to[i] = t[index[i]];
+            length[i] = l[index[i]];
+        }
+    }
+
+    // sort index[lo..hi) by edge order
+    private void mergeSort(int[] index, int[] aux, int lo, int hi) {
+        if (hi - lo < 2) return;
+        int mid = (lo + hi) >>> 1;
+        mergeSort(index, aux, lo, mid);
+        mergeSort(index, aux, mid, hi);
+        System.arraycopy(index, lo, aux, lo, hi - lo);
+        int i = lo, j = mid;
+        for (int k = lo; k < hi; k++) {
+            if (i == mid) index[k] = aux[j++];
+            else if (j == hi) index[k] = aux[i++];
+            else if (less(aux[j], aux[i])) index[k] = aux[j++];
+            else index[k] = aux[i++];
+        }
+    }
+
+    // is edge e shorter than edge f
+    private boolean less(int e, int f) {
+        if (length[e] != length[f]) return length[e] < length[f];
+        if (from[e] != from[f]) return from[e] < from[f];
+        return to[e] < to[f];
+    }
+
+    // unit testing
+    public static void main(String[] args) {
+        int m = Integer.parseInt(args[0]);
+        Point2D[] points = new Point2D[m];
+        Random random = new Random(1);
+        for (int i = 0; i < m; i++)
+            points[i] = new Point2D(random.nextDouble(), random.nextDouble());
+
+        Stopwatch watch = new Stopwatch();
+        EuclideanMST mst = new EuclideanMST(points);
+        double total = 0;
+        for (int i = 0; i < mst.size(); i++)
+            total += Math.sqrt(mst.length(i));
+        StdOut.println("edges " + mst.size() + ", total length " + total);
+        StdOut.println("elapsed time " + watch.elapsedTime());
+    }
+}
@@ -0,0 +1,241 @@
+import edu.princeton.cs.algs4.StdOut;
+
+import java.util.Arrays;
+
+public class FeatureBins {
+
+    // Largest number of bins a column can be split into.
+    public static final int MAX_BINS = 65536;
+
+    // Number of rows that were binned.
+    private final int nRows;
+
+    // Number of columns (reduced dimensions).
+    private final int dims;
+
+    // Bin code of every row, one array per column. Codes are stored in
+    // bytes when at most 256 bins are requested and in shorts otherwise;
+    // both are read back unsigned. The arrays may have room for more rows
+    // than nRows, which append() fills in place when these bins are the
+    // last ones appended from the shared arrays (filled[0] == nRows).
+    private final byte[][] byteCodes;
+    private final short[][] shortCodes;
+    private final int[] filled;
+
+    // Largest training value that fell into each bin of each column.
+    // A split after bin b is the threshold upper[k][b].
+    private final int[][] upper;
+
+    // Quantize every column of input into at most maxBins bins.
+    public FeatureBins(int[][] input, int maxBins) {
+        this(input, WeakLearner.sortColumns(input), maxBins);
+    }
+
+    // Same as above, reusing the column orders from WeakLearner.sortColumns.
+    // Bins hold roughly the same number of rows and a value is never split
+    // across two bins, so a column with at most maxBins distinct values
+    // keeps every one of them as a candidate threshold.
+    public FeatureBins(int[][] input, int[][] order, int maxBins) {
+        this(new TrainingMatrix(input), order, maxBins);
+    }
+
+    // Same as above over a column-major training matrix.
+    public FeatureBins(TrainingMatrix input, int[][] order, int maxBins) {
+        if (input == null || order == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        if (maxBins < 2 || maxBins > MAX_BINS)
+            throw new IllegalArgumentException("number of bins is invalid");
+
+        nRows = input.size();
+        dims = input.dimensions();
+        filled = new int[] { nRows };
+        if (order.length != dims)
+            throw new IllegalArgumentException("number of columns is invalid");
+
+        upper = new int[dims][];
+        if (maxBins <= 256) {
+            byteCodes = new byte[dims][nRows];
+            shortCodes = null;
+        }
+        else {
+            byteCodes = null;
+            shortCodes = new short[dims][nRows];
+        }
+
+        int[] edges = new int[maxBins];
+        for (int k = 0; k < dims; k++) {
+            int[] rows = order[k];
+            int bin = 0;
+            int start = 0;
+            for (int p = 0; p < nRows; p++) {
+                int value = input.get(rows[p], k);
+                if (p + 1 < nRows && input.get(rows[p + 1], k) == value)
+                    continue;
+
+                // rows start..p all hold value; they share the current bin
+                for (int q = start; q <= p; q++) {
+                    if (byteCodes != null) byteCodes[k][rows[q]] = (byte) bin;
+                    else shortCodes[k][rows[q]] = (short) bin;
+                }
+                start = p + 1;
+                edges[bin] = value;
+
+                // move on once the bin holds its share of the rows, as long
+                // as there are rows left to fill the next one
+                boolean full = (long) (p + 1) * maxBins >= (long) (bin + 1) * nRows;
+                if (full && p + 1 < nRows && bin < maxBins - 1)
+                    bin++;
+            }
+            int used = bin + 1;
+            upper[k] = new int[used];
+            System.arraycopy(edges, 0, upper[k], 0, used);
+        }
+    }
+
+    private FeatureBins(int nRows, int dims, byte[][] byteCodes, short[][] shortCodes,
+                        int[] filled, int[][] upper) {
+        this.nRows = nRows;
+        this.dims = dims;
+        this.byteCodes = byteCodes;
+        this.shortCodes = shortCodes;
+        this.filled = filled;
+        this.upper = upper;
+    }
+
+    // These bins with rows appended after the binned ones, each coded with
+    // the existing thresholds: a value lands in the first bin whose upper
+    // value reaches it, and a value past the last bin raises that bin's
+    // upper value. These bins are unchanged. The codes go into the spare
+    // room of the shared arrays when there is enough, or else into copies
+    // with room for twice the rows, so the cost is O(rows k log bins)
+    // plus an amortized O(k) copying per row.
+    public FeatureBins append(int[][] rows) {
+        if (rows == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        for (int[] row : rows)
+            if (row == null || row.length != dims)
+                throw new IllegalArgumentException("number of columns is invalid");
+        int total = nRows + rows.length;
+        int room = byteCodes != null ? byteCodes[0].length : shortCodes[0].length;
+        boolean inPlace = filled[0] == nRows && total <= room;
+        int size = (int) Math.max(total, Math.min(2L * nRows, Integer.MAX_VALUE));
+        int[][] newUpper = new int[dims][];
+        byte[][] newBytes = byteCodes == null ? null : new byte[dims][];
+        short[][] newShorts = shortCodes == null ? null : new short[dims][];
+        for (int k = 0; k < dims; k++) {
+            int[] edges = upper[k].clone();
+            int last = edges.length - 1;
+            if (newBytes != null)
+                newBytes[k] = inPlace ? byteCodes[k] : Arrays.copyOf(byteCodes[k], size);
+            else
+                newShorts[k] = inPlace ? shortCodes[k] : Arrays.copyOf(shortCodes[k], size);
+            for (int j = 0; j < rows.length; j++) {
+                int value = rows[j][k];
+                int bin = Arrays.binarySearch(edges, value);
+                if (bin < 0) bin = -bin - 1;
+                if (bin > last) {
+                    bin = last;
+                    edges[last] = value;
+                }
+                if (newBytes != null) newBytes[k][nRows + j] = (byte) bin;
+                else newShorts[k][nRows + j] = (short) bin;
+            }
+            newUpper[k] = edges;
+        }
+        int[] newFilled = inPlace ? filled : new int[1];
+        newFilled[0] = total;
+        return new FeatureBins(total, dims, newBytes, newShorts, newFilled, newUpper);
+    }
+
+    // number of binned rows
+    public int size() {
+        return nRows;
+    }
+
+    // number of columns
+    public int dimensions() {
+        return dims;
+    }
+
+    // number of bins actually used by column k
+    public int binCount(int k) {
+        return upper[k].length;
+    }
+
+    // largest value in bin b of column k
+    public int upperValue(int k, int b) {
+        return upper[k][b];
+    }
+
+    // bin of row i in column k
+    public int binOf(int k, int i) {
+        if (byteCodes != null) return byteCodes[k][i] & 0xFF;
+        return shortCodes[k][i] & 0xFFFF;
+    }
+
+    // Adds the weight of every row to the histogram of its label for
+    // column k. hist0 and hist1 must hold at least binCount(k) entries
+    // and are cleared first.
+    public void histogram(int k, double[] weights, int[] labels,
+                          double[] hist0, double[] hist1) {
+        int bins = upper[k].length;
+        for (int b = 0; b < bins; b++) {
+            hist0[b] = 0;
+            hist1[b] = 0;
+        }
+        if (byteCodes != null) {
+            byte[] codes = byteCodes[k];
+            for (int i = 0; i < nRows; i++)
+                addTo(codes[i] & 0xFF, weights[i], labels[i], hist0, hist1);
+        }
+        else {
+            short[] codes = shortCodes[k];
+            for (int i = 0; i < nRows; i++)
+                addTo(codes[i] & 0xFFFF, weights[i], labels[i], hist0, hist1);
+        }
+    }
+
+    // Same as above over a subset of the rows: row rows[j] is added with
+    // weight rowWeights[j], so the cost is O(rows.length).
+    public void histogram(int k, int[] rows, double[] rowWeights, int[] labels,
+                          double[] hist0, double[] hist1) {
+        int bins = upper[k].length;
+        for (int b = 0; b < bins; b++) {
+            hist0[b] = 0;
+            hist1[b] = 0;
+        }
+        if (byteCodes != null) {
+            byte[] codes = byteCodes[k];
+            for (int j = 0; j < rows.length; j++)
+                addTo(codes[rows[j]] & 0xFF, rowWeights[j], labels[rows[j]], hist0, hist1);
+        }
+        else {
+            short[] codes = shortCodes[k];
+            for (int j = 0; j < rows.length; j++)
+                addTo(codes[rows[j]] & 0xFFFF, rowWeights[j], labels[rows[j]], hist0, hist1);
+        }
+    }
+
+    // add one weighted label to bin b
+    private static void addTo(int b, double weight, int label,
+                              double[] hist0, double[] hist1) {
+        if (label == 0) hist0[b] += weight;
+        else if (label == 1) hist1[b] += weight;
+        else throw new IllegalArgumentException("label wrong");
+    }
+
+    // unit testing
+    public static void main(String[] args) {
+        int[][] input = {
+                { 1, 10 }, { 2, 10 }, { 2, 20 }, { 3, 30 },
+                { 4, 30 }, { 5, 40 }, { 6, 50 }, { 7, 60 }
+        };
+        FeatureBins bins = new FeatureBins(input, 4);
+        for (int k = 0; k < bins.dimensions(); k++) {
+            StdOut.print("column " + k + ":");
+            for (int b = 0; b < bins.binCount(k); b++)
+                StdOut.print(" <=" + bins.upperValue(k, b));
+            StdOut.println();
+        }
+    }
+}
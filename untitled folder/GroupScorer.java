@@ -0,0 +1,235 @@
+import edu.princeton.cs.algs4.Point2D;
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class GroupScorer {
+
+    // Scores a group of models that share one clustering. Each raw row is
+    // reduced once for the whole group. A block of reduced rows is stored
+    // column by column, so every stump of every model reads one contiguous
+    // run of its dimension while its threshold and vote stay in registers.
+    // Blocks run as tasks on a ForkJoinPool, as in BatchScorer.
+
+    private static final Metrics.Timer GROUP_TIME = Metrics.global().timer(
+            "predict_group", "Scoring one batch of raw samples with a group of models");
+
+    // clustering used to reduce the raw samples
+    private final Clustering clustering;
+
+    // number of models and of reduced dimensions
+    private final int models;
+    private final int dims;
+
+    // the stumps of every model back to back; model g owns stumps
+    // first[g] to first[g + 1] - 1
+    private final int[] first;
+    private final int[] dimension;
+    private final int[] value;
+
+    // the vote of each stump at or below its threshold: +alpha for 1 and
+    // -alpha for 0 (alpha is 1 in an unweighted model); above it, the
+    // negation
+    private final double[] vote;
+
+    // pool the blocks run on
+    private final ForkJoinPool pool;
+
+    // score with every ensemble over the reduced dimensions of clustering
+    public GroupScorer(Clustering clustering, List<CompiledEnsemble> ensembles,
+                       ForkJoinPool pool) {
+        if (clustering == null || ensembles == null || pool == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        if (ensembles.isEmpty())
+            throw new IllegalArgumentException("no models to score");
+        this.clustering = clustering;
+        this.pool = pool;
+        models = ensembles.size();
+        dims = clustering.clusterCount();
+
+        first = new int[models + 1];
+        for (int g = 0; g < models; g++) {
+            CompiledEnsemble ensemble = ensembles.get(g);
+            if (ensemble == null)
+                throw new IllegalArgumentException("argument cannot be null");
+            if (ensemble.dimensions() != dims)
+                throw new IllegalArgumentException("ensemble does not match clustering");
+            first[g + 1] = first[g] + ensemble.size();
+        }
+        int stumps = first[models];
+        dimension = new int[stumps];
+        value = new int[stumps];
+        vote = new double[stumps];
+        for (int g = 0; g < models; g++) {
+            CompiledEnsemble ensemble = ensembles.get(g);
+            for (int t = 0; t < ensemble.size(); t++) {
+                int s = first[g] + t;
+                dimension[s] = ensemble.dimensionOf(t);
+                value[s] = ensemble.valueOf(t);
+                double alpha = ensemble.alphaOf(t);
+                vote[s] = ensemble.signOf(t) == 1 ? alpha : -alpha;
+            }
+        }
+    }
+
+    // the group of saved or trained models; all of them must cluster the
+    // locations the same way
+    public static GroupScorer of(List<ChurnModel> models, ForkJoinPool pool) {
+        if (models == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        if (models.isEmpty())
+            throw new IllegalArgumentException("no models to score");
+        Clustering clustering = models.get(0).getClustering();
+        List<CompiledEnsemble> ensembles = new ArrayList<>();
+        for (ChurnModel model : models) {
+            if (model == null)
+                throw new IllegalArgumentException("argument cannot be null");
+            if (!sameClusters(clustering, model.getClustering()))
+                throw new IllegalArgumentException("models do not share a clustering");
+            ensembles.add(model.getEnsemble());
+        }
+        return new GroupScorer(clustering, ensembles, pool);
+    }
+
+    // whether a and b assign every location to the same cluster
+    private static boolean sameClusters(Clustering a, Clustering b) {
+        if (a == b) return true;
+        if (a.clusterCount() != b.clusterCount() || a.locationCount() != b.locationCount())
+            return false;
+        for (int i = 0; i < a.locationCount(); i++)
+            if (a.clusterOf(i) != b.clusterOf(i)) return false;
+        return true;
+    }
+
+    // number of models in the group
+    public int size() {
+        return models;
+    }
+
+    // Predicted label (0 or 1) of every raw sample under every model, row
+    // by row: model g's label for sample i is at [i * size() + g]. Each
+    // model labels a sample exactly as its own predict() would.
+    public byte[] predictAll(int[][] samples) {
+        if (samples == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        long start = System.nanoTime();
+        byte[] predictions = new byte[samples.length * models];
+        pool.invoke(new Block(samples, predictions, 0, samples.length));
+        GROUP_TIME.record(System.nanoTime() - start);
+        ChurnModel.PREDICTIONS.add((long) samples.length * models);
+        return predictions;
+    }
+
+    // splits a range of rows in halves until it fits in one block
+    private class Block extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[][] samples;
+        private final byte[] predictions;
+        private final int lo, hi;
+
+        private Block(int[][] samples, byte[] predictions, int lo, int hi) {
+            this.samples = samples;
+            this.predictions = predictions;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected void compute() {
+            if (hi - lo > BatchScorer.BLOCK_SIZE) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Block(samples, predictions, lo, mid),
+                          new Block(samples, predictions, mid, hi));
+                return;
+            }
+            int rows = hi - lo;
+
+            // reduce each row once; column d of the block is
+            // columns[d * rows .. (d + 1) * rows)
+            int[] reduced = new int[dims];
+            int[] columns = new int[dims * rows];
+            for (int r = 0; r < rows; r++) {
+                clustering.reduceDimensions(samples[lo + r], reduced);
+                for (int d = 0; d < dims; d++)
+                    columns[d * rows + r] = reduced[d];
+            }
+
+            // stump by stump, adding the vote to the margin of every row;
+            // the margins sum in stump order, as in CompiledEnsemble
+            double[] margins = new double[rows];
+            for (int g = 0; g < models; g++) {
+                Arrays.fill(margins, 0.0);
+                for (int s = first[g]; s < first[g + 1]; s++) {
+                    int base = dimension[s] * rows;
+                    int threshold = value[s];
+                    double low = vote[s];
+                    for (int r = 0; r < rows; r++)
+                        margins[r] += columns[base + r] <= threshold ? low : -low;
+                }
+                for (int r = 0; r < rows; r++)
+                    predictions[(lo + r) * models + g] = (byte) (margins[r] > 0 ? 1 : 0);
+            }
+        }
+    }
+
+    // unit testing: score n random samples over m locations with a group of
+    // models of t stumps each, together and one model at a time
+    // usage: java GroupScorer n m k models t
+    public static void main(String[] args) {
+        int n = Integer.parseInt(args[0]);
+        int m = Integer.parseInt(args[1]);
+        int k = Integer.parseInt(args[2]);
+        int count = Integer.parseInt(args[3]);
+        int t = Integer.parseInt(args[4]);
+
+        Random random = new Random(0);
+        Point2D[] locations = new Point2D[m];
+        for (int j = 0; j < m; j++)
+            locations[j] = new Point2D(random.nextDouble(), random.nextDouble());
+        int[][] samples = new int[n][m];
+        for (int i = 0; i < n; i++)
+            for (int j = 0; j < m; j++)
+                samples[i][j] = random.nextInt(4);
+
+        // one model per segment, each with its own labels, all on one
+        // clustering; every other model is alpha weighted
+        Clustering clustering = new Clustering(locations, k);
+        List<ChurnModel> group = new ArrayList<>();
+        for (int g = 0; g < count; g++) {
+            int[] labels = new int[n];
+            for (int i = 0; i < n; i++)
+                labels[i] = samples[i][g % m] + samples[i][(3 * g + 1) % m] > 3 ? 1 : 0;
+            BoostingAlgorithm model = new BoostingAlgorithm(samples, labels, clustering);
+            model.setAlphaWeighted(g % 2 == 1);
+            for (int i = 0; i < t; i++)
+                model.iterate();
+            group.add(model.toModel());
+        }
+
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        GroupScorer scorer = GroupScorer.of(group, pool);
+        int[][] separate = new int[count][];
+        byte[] together = null;
+        for (int rep = 0; rep < 3; rep++) {
+            Stopwatch watch = new Stopwatch();
+            for (int g = 0; g < count; g++)
+                separate[g] = group.get(g).predictAll(samples, pool);
+            double one = watch.elapsedTime();
+            watch = new Stopwatch();
+            together = scorer.predictAll(samples);
+            StdOut.println("one model at a time " + one + "  as a group " + watch.elapsedTime());
+        }
+
+        int mismatches = 0;
+        for (int i = 0; i < n; i++)
+            for (int g = 0; g < count; g++)
+                if (separate[g][i] != together[i * count + g]) mismatches++;
+        StdOut.println("mismatches " + mismatches);
+    }
+}
@@ -0,0 +1,87 @@
+import edu.princeton.cs.algs4.StdOut;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LatencyHistogram {
+
+    // Log-linear buckets: values below SUB are counted exactly; above that,
+    // every power of two is split into SUB / 2 buckets, so a recorded value
+    // is known to within about 1 / SUB of itself. Recording is one atomic
+    // increment and is safe from any number of threads.
+    private static final int SUB_BITS = 6;
+    private static final int SUB = 1 << SUB_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS + 1) * SUB);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    // record one value (typically nanoseconds); negative values count as 0
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        sum.add(value);
+    }
+
+    // number of recorded values
+    public long count() {
+        return count.sum();
+    }
+
+    // total of the recorded values
+    public long sum() {
+        return sum.sum();
+    }
+
+    // mean of the recorded values, 0 if there are none
+    public double mean() {
+        long n = count.sum();
+        return n == 0 ? 0.0 : (double) sum.sum() / n;
+    }
+
+    // Smallest bucket bound at or above the q-quantile of the recorded
+    // values (0 <= q <= 1), or 0 if there are none.
+    public long percentile(double q) {
+        if (q < 0 || q > 1)
+            throw new IllegalArgumentException("quantile must be in [0, 1]");
+        long n = 0;
+        for (int b = 0; b < counts.length(); b++)
+            n += counts.get(b);
+        if (n == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(q * n));
+        long seen = 0;
+        for (int b = 0; b < counts.length(); b++) {
+            seen += counts.get(b);
+            if (seen >= target) return upperBound(b);
+        }
+        return upperBound(counts.length() - 1);
+    }
+
+    // bucket holding value
+    private static int bucket(long value) {
+        if (value < SUB) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS + 1;
+        return shift * SUB + (int) (value >>> shift);
+    }
+
+    // largest value that lands in bucket b
+    private static long upperBound(int b) {
+        int shift = b / SUB;
+        long sub = b % SUB;
+        if (shift == 0) return sub;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    // unit testing
+    public static void main(String[] args) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++)
+            histogram.record((long) (1000 * Math.exp(random.nextGaussian())));
+        StdOut.println("mean " + histogram.mean());
+        StdOut.println("p50  " + histogram.percentile(0.50) + " (exact 1000)");
+        StdOut.println("p99  " + histogram.percentile(0.99) + " (exact ~10240)");
+    }
+}
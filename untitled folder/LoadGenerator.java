@@ -0,0 +1,86 @@
+import edu.princeton.cs.algs4.StdOut;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LoadGenerator {
+
+    // Closed-loop load against a ScoringServer: each client thread sends
+    // requests of rowsPerRequest random customers back to back and records
+    // the round-trip time, so the report shows what a caller sees
+    // (including HTTP overhead), next to the server's own /stats.
+
+    // usage: java LoadGenerator url clients requests rowsPerRequest m
+    // e.g.   java LoadGenerator http://localhost:8080 16 2000 1 200
+    public static void main(String[] args) throws Exception {
+        String url = args[0];
+        int clients = Integer.parseInt(args[1]);
+        int requests = Integer.parseInt(args[2]);
+        int rowsPerRequest = Integer.parseInt(args[3]);
+        int m = Integer.parseInt(args[4]);
+
+        HttpClient client = HttpClient.newHttpClient();
+        URI score = URI.create(url + "/score");
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder failures = new LongAdder();
+
+        Thread[] threads = new Thread[clients];
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            long seed = c;
+            threads[c] = new Thread(() -> {
+                Random random = new Random(seed);
+                for (int r = 0; r < requests; r++) {
+                    HttpRequest request = HttpRequest.newBuilder(score)
+                            .POST(HttpRequest.BodyPublishers.ofString(body(random, rowsPerRequest, m)))
+                            .build();
+                    long sent = System.nanoTime();
+                    try {
+                        HttpResponse<String> response =
+                                client.send(request, HttpResponse.BodyHandlers.ofString());
+                        if (response.statusCode() != 200) failures.increment();
+                    }
+                    catch (IOException e) {
+                        failures.increment();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    latency.record(System.nanoTime() - sent);
+                }
+            });
+            threads[c].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        StdOut.printf("%d requests in %.2f s, %.0f req/s, %d failed%n",
+                      latency.count(), seconds, latency.count() / seconds, failures.sum());
+        StdOut.printf("client p50 %d us, p99 %d us%n",
+                      latency.percentile(0.50) / 1000, latency.percentile(0.99) / 1000);
+
+        HttpResponse<String> stats = client.send(
+                HttpRequest.newBuilder(URI.create(url + "/stats")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        StdOut.print(stats.body());
+    }
+
+    // rows of m sparse random activity counts, one per line
+    private static String body(Random random, int rows, int m) {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < m; j++) {
+                if (j > 0) body.append(' ');
+                body.append(random.nextInt(10) < 3 ? random.nextInt(5) : 0);
+            }
+            body.append('\n');
+        }
+        return body.toString();
+    }
+}
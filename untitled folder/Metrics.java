@@ -0,0 +1,260 @@
+import edu.princeton.cs.algs4.StdOut;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Metrics {
+
+    // A registry of named counters, gauges and timers. Metrics are looked
+    // up once (typically into a static final field) and then updated with
+    // no locking: a counter is a LongAdder, a gauge a volatile double and
+    // a timer a LatencyHistogram plus an allocation total, so the hot
+    // paths pay a clock read and a few uncontended atomics, and the
+    // per-sample paths time only a sample of their calls.
+    // The registry exports as JSON lines (one metric per line) or in the
+    // Prometheus text exposition format.
+
+    private static final Metrics GLOBAL = new Metrics();
+
+    // the registry the training and scoring classes report to
+    public static Metrics global() {
+        return GLOBAL;
+    }
+
+    // a monotonically increasing count
+    public static class Counter {
+        private final LongAdder count = new LongAdder();
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long n) {
+            count.add(n);
+        }
+
+        public long get() {
+            return count.sum();
+        }
+    }
+
+    // the last value set
+    public static class Gauge {
+        private volatile double value;
+
+        public void set(double value) {
+            this.value = value;
+        }
+
+        public double get() {
+            return value;
+        }
+    }
+
+    // durations in nanoseconds and, when measured, bytes allocated
+    public static class Timer {
+        private final LatencyHistogram nanos = new LatencyHistogram();
+        private final LongAdder bytes = new LongAdder();
+
+        public void record(long elapsedNanos) {
+            nanos.record(elapsedNanos);
+        }
+
+        // allocatedBytes is the difference of two allocatedBytes() reads;
+        // it is dropped when allocation is not measurable
+        public void record(long elapsedNanos, long allocatedBytes) {
+            nanos.record(elapsedNanos);
+            if (allocatedBytes > 0) bytes.add(allocatedBytes);
+        }
+
+        public LatencyHistogram histogram() {
+            return nanos;
+        }
+
+        public long allocatedBytes() {
+            return bytes.sum();
+        }
+    }
+
+    // 1 in SAMPLE_RATE calls of sampled() is true
+    public static final int SAMPLE_RATE = 64;
+
+    // Whether to time this call of a path too short to time every call
+    // (two clock reads can cost as much as scoring one sample); callers
+    // still count every call.
+    public static boolean sampled() {
+        return ThreadLocalRandom.current().nextInt(SAMPLE_RATE) == 0;
+    }
+
+    // one registered metric
+    private static class Entry {
+        private final String help;
+        private final Object metric;
+
+        private Entry(String help, Object metric) {
+            this.help = help;
+            this.metric = metric;
+        }
+    }
+
+    // by name, so both exports list metrics in a stable order
+    private final Map<String, Entry> metrics = new ConcurrentSkipListMap<>();
+
+    public Counter counter(String name, String help) {
+        return register(name, help, Counter.class);
+    }
+
+    public Gauge gauge(String name, String help) {
+        return register(name, help, Gauge.class);
+    }
+
+    public Timer timer(String name, String help) {
+        return register(name, help, Timer.class);
+    }
+
+    // the metric called name, created on first use; asking for an existing
+    // name with another type is an error
+    private <T> T register(String name, String help, Class<T> type) {
+        if (name == null || help == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        if (!name.matches("[a-zA-Z_][a-zA-Z0-9_]*"))
+            throw new IllegalArgumentException("invalid metric name " + name);
+        Entry entry = metrics.computeIfAbsent(name, key -> new Entry(help, create(type)));
+        if (!type.isInstance(entry.metric))
+            throw new IllegalArgumentException(name + " is not a " + type.getSimpleName());
+        return type.cast(entry.metric);
+    }
+
+    private static Object create(Class<?> type) {
+        if (type == Counter.class) return new Counter();
+        if (type == Gauge.class) return new Gauge();
+        return new Timer();
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private static com.sun.management.ThreadMXBean threads() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+                return threads;
+            }
+        }
+        return null;
+    }
+
+    // bytes allocated by the current thread so far, or -1 if unknown;
+    // work handed to other threads is not included
+    public static long allocatedBytes() {
+        if (THREADS == null) return -1;
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // one JSON object per metric, each on its own line
+    public String toJsonLines() {
+        long now = System.currentTimeMillis();
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Entry> e : metrics.entrySet()) {
+            Object metric = e.getValue().metric;
+            out.append("{\"ts\":").append(now)
+               .append(",\"name\":\"").append(e.getKey()).append('"');
+            if (metric instanceof Counter) {
+                out.append(",\"type\":\"counter\",\"value\":").append(((Counter) metric).get());
+            }
+            else if (metric instanceof Gauge) {
+                out.append(",\"type\":\"gauge\",\"value\":").append(json(((Gauge) metric).get()));
+            }
+            else {
+                Timer timer = (Timer) metric;
+                LatencyHistogram h = timer.histogram();
+                out.append(",\"type\":\"timer\",\"count\":").append(h.count())
+                   .append(",\"sum_ns\":").append(h.sum())
+                   .append(",\"mean_ns\":").append(json(h.mean()))
+                   .append(",\"p50_ns\":").append(h.percentile(0.50))
+                   .append(",\"p99_ns\":").append(h.percentile(0.99))
+                   .append(",\"allocated_bytes\":").append(timer.allocatedBytes());
+            }
+            out.append("}\n");
+        }
+        return out.toString();
+    }
+
+    // the Prometheus text exposition format; a timer is a summary in
+    // seconds plus an allocated-bytes counter
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Entry> e : metrics.entrySet()) {
+            String name = e.getKey();
+            String help = e.getValue().help;
+            Object metric = e.getValue().metric;
+            if (metric instanceof Counter) {
+                header(out, name + "_total", help, "counter");
+                out.append(name).append("_total ").append(((Counter) metric).get()).append('\n');
+            }
+            else if (metric instanceof Gauge) {
+                header(out, name, help, "gauge");
+                out.append(name).append(' ').append(prometheus(((Gauge) metric).get())).append('\n');
+            }
+            else {
+                Timer timer = (Timer) metric;
+                LatencyHistogram h = timer.histogram();
+                String seconds = name + "_seconds";
+                header(out, seconds, help, "summary");
+                out.append(seconds).append("{quantile=\"0.5\"} ")
+                   .append(h.percentile(0.50) / 1e9).append('\n');
+                out.append(seconds).append("{quantile=\"0.99\"} ")
+                   .append(h.percentile(0.99) / 1e9).append('\n');
+                out.append(seconds).append("_sum ").append(h.sum() / 1e9).append('\n');
+                out.append(seconds).append("_count ").append(h.count()).append('\n');
+                header(out, name + "_allocated_bytes_total", help + " (bytes allocated)", "counter");
+                out.append(name).append("_allocated_bytes_total ")
+                   .append(timer.allocatedBytes()).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ')
+           .append(help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    // JSON has no NaN or infinities
+    private static String json(double x) {
+        return Double.isFinite(x) ? Double.toString(x) : "null";
+    }
+
+    private static String prometheus(double x) {
+        if (Double.isNaN(x)) return "NaN";
+        if (Double.isInfinite(x)) return x > 0 ? "+Inf" : "-Inf";
+        return Double.toString(x);
+    }
+
+    // train a model on synthetic data and print what it reported
+    // usage: java Metrics n m k rounds [prometheus]
+    public static void main(String[] args) {
+        int n = Integer.parseInt(args[0]);
+        int m = Integer.parseInt(args[1]);
+        int k = Integer.parseInt(args[2]);
+        int rounds = Integer.parseInt(args[3]);
+        SyntheticData data = new SyntheticData(n, m, 42);
+        BoostingAlgorithm model = new BoostingAlgorithm(data.getInput(), data.getLabels(),
+                                                        data.getLocations(), k);
+        for (int t = 0; t < rounds; t++)
+            model.iterate();
+        model.predictAll(data.getInput());
+        for (int i = 0; i < 1000; i++)
+            model.predict(data.getInput()[i % n]);
+
+        if (args.length > 4 && args[4].equals("prometheus"))
+            StdOut.print(global().toPrometheus());
+        else
+            StdOut.print(global().toJsonLines());
+    }
+}
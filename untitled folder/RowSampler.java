@@ -0,0 +1,243 @@
+import edu.princeton.cs.algs4.StdOut;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class RowSampler {
+
+    // Picks the rows a boosting round searches for its split.
+    //   TRIM      the heaviest fraction of the rows, searched with their
+    //             own weights (weight-threshold trimming); expected O(n)
+    //             with a quickselect
+    //   WEIGHTED  a weight-proportional sample: s evenly spaced points, at
+    //             one random offset, on the cumulative weights (systematic
+    //             sampling). A row holding c of the points is searched
+    //             with weight c / s, so heavy rows keep their share. One
+    //             O(n) pass, no per-row random numbers or logs, and the
+    //             rows come out in increasing order.
+    // Both are deterministic for a given seed, and the generator's state
+    // can be saved and put back, so a model cut back to an earlier round
+    // draws the same samples as one that stopped there.
+
+    public static final int TRIM = 0;
+    public static final int WEIGHTED = 1;
+
+    private final int mode;
+    private final double fraction;
+    private final Generator random;
+
+    // scratch reused across rounds
+    private double[] keys;
+    private int[] index;
+
+    // search weights of the rows returned by the last sample()
+    private double[] searchWeights;
+
+    // sample about ceil(fraction * n) rows per round in the given mode
+    public RowSampler(int mode, double fraction, long seed) {
+        if (mode != TRIM && mode != WEIGHTED)
+            throw new IllegalArgumentException("invalid sampling mode");
+        if (!(fraction > 0 && fraction <= 1))
+            throw new IllegalArgumentException("fraction must be in (0, 1]");
+        this.mode = mode;
+        this.fraction = fraction;
+        this.random = new Generator(seed);
+    }
+
+    // java.util.Random's generator, with its 48-bit state readable; it
+    // draws the same numbers as new Random(seed)
+    private static final class Generator extends Random {
+        private static final long MULTIPLIER = 0x5DEECE66DL;
+        private static final long MASK = (1L << 48) - 1;
+
+        private long state;
+
+        Generator(long seed) {
+            state = (seed ^ MULTIPLIER) & MASK;
+        }
+
+        @Override
+        protected int next(int bits) {
+            state = (state * MULTIPLIER + 0xBL) & MASK;
+            return (int) (state >>> (48 - bits));
+        }
+    }
+
+    // the generator state, for restore()
+    public long state() {
+        return random.state;
+    }
+
+    // go back to a state returned by state(); the samples drawn from here
+    // on are the ones drawn after it was taken
+    public void restore(long state) {
+        if ((state & ~Generator.MASK) != 0)
+            throw new IllegalArgumentException("invalid generator state");
+        random.state = state;
+    }
+
+    public int mode() {
+        return mode;
+    }
+
+    public double fraction() {
+        return fraction;
+    }
+
+    // number of rows (TRIM) or sampling points (WEIGHTED) out of n; a
+    // weighted sample has fewer distinct rows when some hold several points
+    public int sampleSize(int n) {
+        return Math.max(1, Math.min(n, (int) Math.ceil(fraction * n)));
+    }
+
+    // the rows chosen for this round, in increasing order
+    public int[] sample(double[] weights) {
+        if (weights == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        int n = weights.length;
+        if (n == 0)
+            throw new IllegalArgumentException("no rows to sample");
+        int s = sampleSize(n);
+        return mode == TRIM ? trim(weights, s) : systematic(weights, s);
+    }
+
+    // the weights the split search should give the rows returned by the
+    // last sample(), in the same order
+    public double[] searchWeights() {
+        if (searchWeights == null)
+            throw new IllegalStateException("nothing sampled yet");
+        return searchWeights;
+    }
+
+    // the s heaviest rows
+    private int[] trim(double[] weights, int s) {
+        int n = weights.length;
+        if (keys == null || keys.length != n) {
+            keys = new double[n];
+            index = new int[n];
+        }
+        for (int i = 0; i < n; i++) {
+            index[i] = i;
+            keys[i] = weights[i];
+        }
+        selectLargest(s);
+        int[] rows = Arrays.copyOf(index, s);
+        Arrays.sort(rows);
+
+        searchWeights = new double[s];
+        for (int j = 0; j < s; j++)
+            searchWeights[j] = weights[rows[j]];
+        return rows;
+    }
+
+    // the rows under s evenly spaced points of the cumulative weights
+    private int[] systematic(double[] weights, int s) {
+        double total = 0;
+        for (double w : weights)
+            total += w;
+        if (!(total > 0))
+            throw new IllegalArgumentException("weights must have a positive sum");
+
+        double step = total / s;
+        double point = random.nextDouble() * step;
+        int[] rows = new int[s];
+        double[] copies = new double[s];
+        int count = 0;
+        int taken = 0;
+        double cumulative = 0;
+        for (int i = 0; i < weights.length && taken < s; i++) {
+            cumulative += weights[i];
+            int c = 0;
+            while (taken < s && point < cumulative) {
+                c++;
+                taken++;
+                point += step;
+            }
+            if (c > 0) {
+                rows[count] = i;
+                copies[count++] = c;
+            }
+        }
+        // rounding can leave the last points past the final row
+        if (taken < s) {
+            if (count > 0 && rows[count - 1] == weights.length - 1) {
+                copies[count - 1] += s - taken;
+            }
+            else {
+                rows[count] = weights.length - 1;
+                copies[count++] = s - taken;
+            }
+        }
+
+        searchWeights = new double[count];
+        for (int j = 0; j < count; j++)
+            searchWeights[j] = copies[j] / s;
+        return Arrays.copyOf(rows, count);
+    }
+
+    // move the s rows with the largest keys to index[0..s), using a
+    // three-way partition so runs of equal keys (equal weights in the first
+    // round) do not degrade it
+    private void selectLargest(int s) {
+        int lo = 0;
+        int hi = index.length - 1;
+        while (lo < hi) {
+            double pivot = keys[index[lo + random.nextInt(hi - lo + 1)]];
+            // index[lo..lt) > pivot, index[lt..i) == pivot, index(gt..hi] < pivot
+            int lt = lo;
+            int gt = hi;
+            int i = lo;
+            while (i <= gt) {
+                int cmp = Double.compare(keys[index[i]], pivot);
+                if (cmp > 0) swap(lt++, i++);
+                else if (cmp < 0) swap(i, gt--);
+                else i++;
+            }
+            if (s <= lt) hi = lt - 1;
+            else if (s > gt + 1) lo = gt + 1;
+            else return;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int t = index[i];
+        index[i] = index[j];
+        index[j] = t;
+    }
+
+    // unit testing
+    // usage: java RowSampler n fraction
+    public static void main(String[] args) {
+        int n = Integer.parseInt(args[0]);
+        double fraction = Double.parseDouble(args[1]);
+        double[] weights = new double[n];
+        Random random = new Random(1);
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            weights[i] = Math.pow(2, random.nextInt(8));
+            total += weights[i];
+        }
+
+        for (int mode : new int[] { TRIM, WEIGHTED }) {
+            RowSampler sampler = new RowSampler(mode, fraction, 42);
+            int[] rows = sampler.sample(weights);
+            double kept = 0;
+            for (int i : rows) kept += weights[i];
+            double searched = 0;
+            for (double w : sampler.searchWeights()) searched += w;
+            int[] again = new RowSampler(mode, fraction, 42).sample(weights);
+
+            // a restored state draws the same sample again
+            long state = sampler.state();
+            int[] next = sampler.sample(weights);
+            sampler.restore(state);
+            boolean restored = Arrays.equals(next, sampler.sample(weights));
+            StdOut.println((mode == TRIM ? "trim     " : "weighted ") + rows.length
+                                   + " rows, " + kept / total + " of the weight, search weight "
+                                   + searched + ", "
+                                   + (Arrays.equals(rows, again) ? "reproducible"
+                                                                 : "NOT reproducible")
+                                   + (restored ? ", restorable" : ", NOT restorable"));
+        }
+    }
+}
@@ -0,0 +1,342 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import edu.princeton.cs.algs4.StdOut;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ScoringServer {
+
+    // HTTP scoring endpoint over a loaded ChurnModel, using only the JDK's
+    // built-in server.
+    //   POST /score  one customer per line, m whitespace-separated ints;
+    //                answers one 0/1 prediction per line
+    //   GET  /stats  scored and failed request counts, batching, and p50/p99
+    //                handler latency of the scored requests
+    //   GET  /metrics  the global Metrics registry in Prometheus format
+    // Request threads only parse and wait, for at most timeoutMillis (503
+    // after that). A batcher thread drains the queue into micro-batches of
+    // up to maxBatch rows, waiting at most maxDelayMicros for a batch to
+    // fill, and hands each batch to a BatchScorer on the pool, so batches
+    // are scored on every core while the next one fills. If the batcher
+    // stops, for any reason, every request still waiting fails at once.
+
+    // how long a request waits for its predictions by default
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10_000;
+
+    // a parsed request waiting for its batch
+    private static class Pending {
+        private final int[][] rows;
+        private final CompletableFuture<int[]> result = new CompletableFuture<>();
+
+        private Pending(int[][] rows) {
+            this.rows = rows;
+        }
+    }
+
+    private final ChurnModel model;
+    private final BatchScorer scorer;
+    private final ForkJoinPool pool;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final long timeoutNanos;
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread batcher;
+    private volatile boolean running;
+
+    // Latency of scored requests from the handler starting to the response
+    // being written; connection, queueing in the HTTP server and network
+    // time are not in it. Requests answered with an error are only counted.
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedRows = new LongAdder();
+
+    // serve model on port (0 picks a free one), scoring on the common pool
+    public ScoringServer(ChurnModel model, int port, int maxBatch, long maxDelayMicros)
+            throws IOException {
+        this(model, port, maxBatch, maxDelayMicros, DEFAULT_TIMEOUT_MILLIS,
+             ForkJoinPool.commonPool());
+    }
+
+    // same as above with a request timeout and the pool batches are scored on
+    public ScoringServer(ChurnModel model, int port, int maxBatch, long maxDelayMicros,
+                         long timeoutMillis, ForkJoinPool pool) throws IOException {
+        if (model == null || pool == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        if (maxBatch < 1 || maxDelayMicros < 0)
+            throw new IllegalArgumentException("invalid batching parameters");
+        if (timeoutMillis < 1)
+            throw new IllegalArgumentException("invalid timeout");
+        this.model = model;
+        this.pool = pool;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        scorer = new BatchScorer(model.getClustering(), model.getEnsemble(), pool);
+
+        // Small responses on kept-alive connections otherwise wait on
+        // Nagle's algorithm against the client's delayed ACK, tens of
+        // milliseconds each. The JDK server reads this once, when its
+        // first instance is made.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        handlers = handlerExecutor();
+        server.setExecutor(handlers);
+        server.createContext("/score", this::score);
+        server.createContext("/stats", this::stats);
+        server.createContext("/metrics", exchange ->
+                respond(exchange, 200, Metrics.global().toPrometheus()));
+        batcher = new Thread(this::batchLoop, "scoring-batcher");
+        batcher.setDaemon(true);
+    }
+
+    // Virtual threads when the runtime has them (JDK 21+), so a blocked
+    // request costs no platform thread; otherwise a cached pool.
+    private static ExecutorService handlerExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    public void start() {
+        running = true;
+        batcher.start();
+        server.start();
+    }
+
+    public void stop() {
+        running = false;
+        server.stop(0);
+        batcher.interrupt();
+        handlers.shutdownNow();
+    }
+
+    // port the server listens on
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public LatencyHistogram latency() {
+        return latency;
+    }
+
+    // handle POST /score
+    private void score(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        boolean scored = false;
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                respond(exchange, 405, "use POST\n");
+                return;
+            }
+            int[][] rows;
+            try {
+                rows = parse(exchange.getRequestBody(),
+                             model.getClustering().locationCount());
+            }
+            catch (IllegalArgumentException e) {
+                respond(exchange, 400, e.getMessage() + "\n");
+                return;
+            }
+
+            if (!running) {
+                respond(exchange, 503, "not scoring\n");
+                return;
+            }
+            Pending pending = new Pending(rows);
+            queue.add(pending);
+            // the batch loop may have stopped and drained the queue since
+            // the check above; take the request back and fail it
+            if (!running && queue.remove(pending))
+                pending.result.completeExceptionally(
+                        new IllegalStateException("scoring stopped"));
+            int[] predictions;
+            try {
+                predictions = pending.result.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                respond(exchange, 503, "shutting down\n");
+                return;
+            }
+            catch (TimeoutException e) {
+                pending.result.cancel(false);
+                respond(exchange, 503, "timed out\n");
+                return;
+            }
+            catch (ExecutionException e) {
+                respond(exchange, 500, e.getCause() + "\n");
+                return;
+            }
+
+            StringBuilder body = new StringBuilder(2 * predictions.length);
+            for (int prediction : predictions)
+                body.append(prediction).append('\n');
+            respond(exchange, 200, body.toString());
+            scored = true;
+        }
+        finally {
+            if (scored) latency.record(System.nanoTime() - start);
+            else failed.increment();
+        }
+    }
+
+    // handle GET /stats
+    private void stats(HttpExchange exchange) throws IOException {
+        long nBatches = batches.sum();
+        String body = "requests " + latency.count() + "\n"
+                + "failed " + failed.sum() + "\n"
+                + "batches " + nBatches + "\n"
+                + "mean_batch_rows " + (nBatches == 0 ? 0.0
+                                                    : (double) batchedRows.sum() / nBatches) + "\n"
+                + "# handler time of scored requests only, not network or connection time\n"
+                + "handler_p50_us " + latency.percentile(0.50) / 1000 + "\n"
+                + "handler_p99_us " + latency.percentile(0.99) / 1000 + "\n";
+        respond(exchange, 200, body);
+    }
+
+    // drain the queue into micro-batches until stopped
+    private void batchLoop() {
+        List<Pending> batch = new ArrayList<>();
+        Throwable failure = null;
+        try {
+            while (running) {
+                Pending first = queue.take();
+                batch.add(first);
+                int rows = first.rows.length;
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (rows < maxBatch) {
+                    long wait = deadline - System.nanoTime();
+                    Pending next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS)
+                                            : queue.poll();
+                    if (next == null) break;
+                    batch.add(next);
+                    rows += next.rows.length;
+                }
+
+                List<Pending> taken = new ArrayList<>(batch);
+                batch.clear();
+                pool.execute(() -> scoreBatch(taken));
+                batches.increment();
+                batchedRows.add(rows);
+            }
+        }
+        catch (InterruptedException e) {
+            // stopped
+        }
+        catch (RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        }
+        finally {
+            // nothing will score the rest; fail it rather than let it wait
+            running = false;
+            Exception stopped = new IllegalStateException("scoring stopped", failure);
+            for (Pending pending : batch)
+                pending.result.completeExceptionally(stopped);
+            Pending left;
+            while ((left = queue.poll()) != null)
+                left.result.completeExceptionally(stopped);
+        }
+    }
+
+    // score one micro-batch as a single BatchScorer call and hand each
+    // request its slice; runs on the pool
+    private void scoreBatch(List<Pending> batch) {
+        try {
+            int total = 0;
+            for (Pending pending : batch)
+                total += pending.rows.length;
+            int[][] rows = new int[total][];
+            int at = 0;
+            for (Pending pending : batch) {
+                System.arraycopy(pending.rows, 0, rows, at, pending.rows.length);
+                at += pending.rows.length;
+            }
+            int[] predictions = scorer.predictAll(rows);
+            at = 0;
+            for (Pending pending : batch) {
+                int n = pending.rows.length;
+                pending.result.complete(Arrays.copyOfRange(predictions, at, at + n));
+                at += n;
+            }
+        }
+        catch (RuntimeException | Error e) {
+            for (Pending pending : batch)
+                pending.result.completeExceptionally(e);
+            if (e instanceof Error) throw (Error) e;
+        }
+    }
+
+    // one row of m ints per non-blank line
+    private static int[][] parse(InputStream body, int m) throws IOException {
+        String text = new String(body.readAllBytes(), StandardCharsets.US_ASCII);
+        List<int[]> rows = new ArrayList<>();
+        for (String line : text.split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty()) continue;
+            String[] tokens = trimmed.split("\\s+");
+            if (tokens.length != m)
+                throw new IllegalArgumentException("expected " + m + " values per line");
+            int[] row = new int[m];
+            try {
+                for (int j = 0; j < m; j++)
+                    row[j] = Integer.parseInt(tokens[j]);
+            }
+            catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid value: " + e.getMessage());
+            }
+            rows.add(row);
+        }
+        if (rows.isEmpty())
+            throw new IllegalArgumentException("no customers in request");
+        return rows.toArray(new int[0][]);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.US_ASCII);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // usage: java ScoringServer model.bin port [maxBatch] [maxDelayMicros] [timeoutMillis]
+    public static void main(String[] args) throws IOException {
+        ChurnModel model = ChurnModel.load(args[0]);
+        int port = Integer.parseInt(args[1]);
+        int maxBatch = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+        long maxDelay = args.length > 3 ? Long.parseLong(args[3]) : 200;
+        long timeout = args.length > 4 ? Long.parseLong(args[4]) : DEFAULT_TIMEOUT_MILLIS;
+        ScoringServer server = new ScoringServer(model, port, maxBatch, maxDelay, timeout,
+                                                 ForkJoinPool.commonPool());
+        server.start();
+        StdOut.println("scoring on port " + server.port());
+    }
+}
@@ -0,0 +1,349 @@
+import edu.princeton.cs.algs4.Point2D;
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+public class SparseDataSet {
+
+    // A data set whose inputs are stored row by row in compressed sparse
+    // row (CSR) form: the non-zero entries of row i are
+    //   (columns[p], values[p]) for rowStart[i] <= p < rowStart[i + 1]
+    // with the columns of a row strictly increasing. Memory is
+    // O(n + m + non-zeros) instead of O(n * m).
+    //
+    // Sparse text layout, next to the DataSet layout:
+    //   n m
+    //   m locations as x y
+    //   n labels
+    //   n rows as: count column value column value ...
+    //
+    // Binary layout (big-endian), read through a memory map:
+    //   int magic, int version, int n, int m, int non-zeros
+    //   m locations as (double x, double y)
+    //   n labels as int
+    //   n + 1 row starts, then the columns, then the values, as int
+
+    // "CHRS"
+    public static final int MAGIC = 0x43485253;
+    public static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 5 * 4;
+
+    private final int n, m;
+    private final Point2D[] locations;
+    private final int[] labels;
+    private final int[] rowStart;
+    private final int[] columns;
+    private final int[] values;
+
+    // take ownership of CSR arrays, checking them
+    private SparseDataSet(int n, int m, Point2D[] locations, int[] labels,
+                          int[] rowStart, int[] columns, int[] values) {
+        if (n < 0 || m < 1 || locations.length != m || labels.length != n)
+            throw new IllegalArgumentException("invalid data set sizes");
+        if (rowStart.length != n + 1 || rowStart[0] != 0
+                || columns.length != rowStart[n] || values.length != rowStart[n])
+            throw new IllegalArgumentException("invalid sparse rows");
+        for (int i = 0; i < n; i++) {
+            if (rowStart[i + 1] < rowStart[i])
+                throw new IllegalArgumentException("invalid sparse rows");
+            for (int p = rowStart[i]; p < rowStart[i + 1]; p++) {
+                if (columns[p] < 0 || columns[p] >= m
+                        || (p > rowStart[i] && columns[p] <= columns[p - 1]))
+                    throw new IllegalArgumentException("invalid column in row " + i);
+            }
+        }
+        this.n = n;
+        this.m = m;
+        this.locations = locations;
+        this.labels = labels;
+        this.rowStart = rowStart;
+        this.columns = columns;
+        this.values = values;
+    }
+
+    // the non-zero entries of a dense n-by-m input
+    public static SparseDataSet fromDense(int[][] input, int[] labels, Point2D[] locations) {
+        if (input == null || labels == null || locations == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        int n = input.length;
+        int m = locations.length;
+        int[] rowStart = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            if (input[i] == null || input[i].length != m)
+                throw new IllegalArgumentException("invalid row " + i);
+            int count = 0;
+            for (int value : input[i])
+                if (value != 0) count++;
+            rowStart[i + 1] = rowStart[i] + count;
+        }
+        int[] columns = new int[rowStart[n]];
+        int[] values = new int[rowStart[n]];
+        for (int i = 0; i < n; i++) {
+            int p = rowStart[i];
+            for (int j = 0; j < m; j++) {
+                if (input[i][j] != 0) {
+                    columns[p] = j;
+                    values[p++] = input[i][j];
+                }
+            }
+        }
+        return new SparseDataSet(n, m, locations.clone(), labels.clone(),
+                                 rowStart, columns, values);
+    }
+
+    // read a file in the sparse text layout
+    public static SparseDataSet fromText(String filename) {
+        return readText(filename, true);
+    }
+
+    // read a file in the dense DataSet layout, keeping only the non-zero
+    // inputs; the dense matrix is never held
+    public static SparseDataSet fromDenseText(String filename) {
+        return readText(filename, false);
+    }
+
+    private static SparseDataSet readText(String filename, boolean sparseRows) {
+        if (filename == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        try (BinaryDataSet.Tokens in = new BinaryDataSet.Tokens(filename)) {
+            int n = in.nextInt();
+            int m = in.nextInt();
+            if (n < 0 || m < 1)
+                throw new IllegalArgumentException("invalid data set sizes");
+            Point2D[] locations = new Point2D[m];
+            for (int j = 0; j < m; j++) {
+                double x = in.nextDouble();
+                double y = in.nextDouble();
+                locations[j] = new Point2D(x, y);
+            }
+            int[] labels = new int[n];
+            for (int i = 0; i < n; i++)
+                labels[i] = in.nextInt();
+
+            int[] rowStart = new int[n + 1];
+            int[] columns = new int[Math.max(16, n)];
+            int[] values = new int[columns.length];
+            int nonZeros = 0;
+            for (int i = 0; i < n; i++) {
+                int count = sparseRows ? in.nextInt() : m;
+                if (count < 0 || count > m)
+                    throw new IllegalArgumentException("invalid entry count in row " + i);
+                for (int e = 0; e < count; e++) {
+                    int column = sparseRows ? in.nextInt() : e;
+                    int value = in.nextInt();
+                    if (value == 0) continue;
+                    if (nonZeros == columns.length) {
+                        columns = Arrays.copyOf(columns, 2 * nonZeros);
+                        values = Arrays.copyOf(values, 2 * nonZeros);
+                    }
+                    columns[nonZeros] = column;
+                    values[nonZeros++] = value;
+                }
+                rowStart[i + 1] = nonZeros;
+            }
+            return new SparseDataSet(n, m, locations, labels, rowStart,
+                                     Arrays.copyOf(columns, nonZeros),
+                                     Arrays.copyOf(values, nonZeros));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // write the data set in the binary layout
+    public void save(String filename) {
+        if (filename == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        int nonZeros = rowStart[n];
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 16 * m + 4 * n
+                                                        + 4 * (n + 1) + 8 * nonZeros);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(m).putInt(nonZeros);
+        for (Point2D location : locations)
+            buffer.putDouble(location.x()).putDouble(location.y());
+        buffer.asIntBuffer().put(labels);
+        buffer.position(buffer.position() + 4 * n);
+        buffer.asIntBuffer().put(rowStart);
+        buffer.position(buffer.position() + 4 * (n + 1));
+        buffer.asIntBuffer().put(columns);
+        buffer.position(buffer.position() + 4 * nonZeros);
+        buffer.asIntBuffer().put(values);
+        buffer.position(buffer.position() + 4 * nonZeros);
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                                                    StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                                    StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // read a file written by save(); the arrays are copied out of a map in
+    // bulk
+    public static SparseDataSet load(String filename) {
+        if (filename == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                                                    StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC)
+            throw new IllegalArgumentException("not a sparse data set: " + filename);
+        int version = buffer.getInt();
+        if (version != VERSION)
+            throw new IllegalArgumentException("unsupported version " + version);
+        int n = buffer.getInt();
+        int m = buffer.getInt();
+        int nonZeros = buffer.getInt();
+        if (n < 0 || m < 1 || nonZeros < 0
+                || buffer.remaining() != 16L * m + 4L * n + 4L * (n + 1) + 8L * nonZeros)
+            throw new IllegalArgumentException("corrupt data set file: " + filename);
+
+        Point2D[] locations = new Point2D[m];
+        for (int j = 0; j < m; j++)
+            locations[j] = new Point2D(buffer.getDouble(), buffer.getDouble());
+        int[] labels = new int[n];
+        int[] rowStart = new int[n + 1];
+        int[] columns = new int[nonZeros];
+        int[] values = new int[nonZeros];
+        for (int[] array : new int[][] { labels, rowStart, columns, values }) {
+            buffer.asIntBuffer().get(array);
+            buffer.position(buffer.position() + 4 * array.length);
+        }
+        return new SparseDataSet(n, m, locations, labels, rowStart, columns, values);
+    }
+
+    public int getN() {
+        return n;
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    // number of stored (non-zero) inputs
+    public int nonZeros() {
+        return rowStart[n];
+    }
+
+    public Point2D[] getLocations() {
+        return locations.clone();
+    }
+
+    public int[] getLabels() {
+        return labels.clone();
+    }
+
+    // The CSR arrays themselves, not copies: row i's entries sit at
+    // rowStart()[i] until rowStart()[i + 1] in columns() and values().
+    public int[] rowStart() {
+        return rowStart;
+    }
+
+    public int[] columns() {
+        return columns;
+    }
+
+    public int[] values() {
+        return values;
+    }
+
+    // input of row i at location j
+    public int get(int i, int j) {
+        if (i < 0 || i >= n || j < 0 || j >= m)
+            throw new IllegalArgumentException("index out of range");
+        int p = Arrays.binarySearch(columns, rowStart[i], rowStart[i + 1], j);
+        return p >= 0 ? values[p] : 0;
+    }
+
+    // reduce row i with clustering into output, touching only its
+    // non-zero entries
+    public void reduceRow(int i, Clustering clustering, int[] output) {
+        if (i < 0 || i >= n)
+            throw new IllegalArgumentException("row out of range");
+        if (clustering == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        if (clustering.locationCount() != m)
+            throw new IllegalArgumentException("clustering has the wrong locations");
+        clustering.reduceDimensions(columns, values, rowStart[i], rowStart[i + 1], output);
+    }
+
+    // materialise the dense n-by-m input, for callers that need int[][]
+    public int[][] getInput() {
+        int[][] input = new int[n][m];
+        for (int i = 0; i < n; i++)
+            for (int p = rowStart[i]; p < rowStart[i + 1]; p++)
+                input[i][columns[p]] = values[p];
+        return input;
+    }
+
+    // compare dense and sparse reduction on random data of the given density
+    // usage: java SparseDataSet n m k density
+    public static void main(String[] args) {
+        int n = Integer.parseInt(args[0]);
+        int m = Integer.parseInt(args[1]);
+        int k = Integer.parseInt(args[2]);
+        double density = Double.parseDouble(args[3]);
+
+        Random random = new Random(1);
+        Point2D[] locations = new Point2D[m];
+        for (int j = 0; j < m; j++)
+            locations[j] = new Point2D(random.nextDouble(), random.nextDouble());
+        int[][] input = new int[n][m];
+        int[] labels = new int[n];
+        for (int i = 0; i < n; i++) {
+            labels[i] = random.nextInt(2);
+            for (int j = 0; j < m; j++)
+                if (random.nextDouble() < density) input[i][j] = 1 + random.nextInt(20);
+        }
+        SparseDataSet sparse = fromDense(input, labels, locations);
+        Clustering clustering = new Clustering(locations, k);
+        StdOut.println(sparse.nonZeros() + " non-zeros, "
+                               + (4L * n * m) / (1 << 20) + " MB dense, "
+                               + (8L * sparse.nonZeros() + 4L * n) / (1 << 20) + " MB sparse");
+
+        int[] dense = new int[k];
+        int[] reduced = new int[k];
+        long checksum = 0;
+        for (int pass = 0; pass < 3; pass++) {
+            Stopwatch watch = new Stopwatch();
+            for (int i = 0; i < n; i++) {
+                clustering.reduceDimensions(input[i], dense);
+                checksum += dense[0];
+            }
+            double denseTime = watch.elapsedTime();
+            watch = new Stopwatch();
+            for (int i = 0; i < n; i++) {
+                sparse.reduceRow(i, clustering, reduced);
+                checksum -= reduced[0];
+            }
+            StdOut.println("dense " + denseTime + "  sparse " + watch.elapsedTime());
+        }
+
+        boolean same = checksum == 0;
+        for (int i = 0; same && i < n; i++) {
+            sparse.reduceRow(i, clustering, reduced);
+            same = Arrays.equals(reduced, clustering.reduceDimensions(input[i]));
+        }
+        StdOut.println(same ? "identical" : "reductions differ");
+    }
+}
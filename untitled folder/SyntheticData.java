@@ -0,0 +1,89 @@
+import edu.princeton.cs.algs4.Point2D;
+import edu.princeton.cs.algs4.StdOut;
+
+import java.util.Random;
+
+public class SyntheticData {
+
+    // number of location hot spots the points gather around
+    private static final int CENTERS = 8;
+
+    private final int n, m;
+    private final Point2D[] locations;
+    private final int[][] input;
+    private final int[] labels;
+
+    // Generate n customers over m locations. Locations gather around a few
+    // centres in the unit square; each customer is active at about 30% of
+    // the locations, and churns when its activity east of x = 0.5 outweighs
+    // the rest plus noise, so clustering the locations is informative.
+    // The same seed always gives the same data.
+    public SyntheticData(int n, int m, long seed) {
+        if (n < 1 || m < 1)
+            throw new IllegalArgumentException("sizes must be positive");
+        this.n = n;
+        this.m = m;
+        Random random = new Random(seed);
+
+        double[] cx = new double[CENTERS], cy = new double[CENTERS];
+        for (int c = 0; c < CENTERS; c++) {
+            cx[c] = random.nextDouble();
+            cy[c] = random.nextDouble();
+        }
+        locations = new Point2D[m];
+        double[] influence = new double[m];
+        for (int j = 0; j < m; j++) {
+            int c = random.nextInt(CENTERS);
+            double x = cx[c] + 0.05 * random.nextGaussian();
+            double y = cy[c] + 0.05 * random.nextGaussian();
+            locations[j] = new Point2D(x, y);
+            influence[j] = x > 0.5 ? 1.0 : -1.0;
+        }
+
+        input = new int[n][m];
+        labels = new int[n];
+        for (int i = 0; i < n; i++) {
+            double score = 0;
+            for (int j = 0; j < m; j++) {
+                if (random.nextDouble() < 0.3) {
+                    input[i][j] = 1 + random.nextInt(20);
+                    score += influence[j] * input[i][j];
+                }
+            }
+            score += 6 * Math.sqrt(m) * random.nextGaussian();
+            labels[i] = score > 0 ? 1 : 0;
+        }
+    }
+
+    public int getN() {
+        return n;
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    // the generated arrays themselves, not copies
+    public Point2D[] getLocations() {
+        return locations;
+    }
+
+    public int[][] getInput() {
+        return input;
+    }
+
+    public int[] getLabels() {
+        return labels;
+    }
+
+    // unit testing
+    public static void main(String[] args) {
+        SyntheticData data = new SyntheticData(Integer.parseInt(args[0]),
+                                               Integer.parseInt(args[1]), 1);
+        int churners = 0;
+        for (int label : data.getLabels())
+            churners += label;
+        StdOut.println(data.getN() + " customers, " + data.getM() + " locations, "
+                               + churners + " churners");
+    }
+}
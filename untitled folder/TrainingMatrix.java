@@ -0,0 +1,269 @@
+import edu.princeton.cs.algs4.StdOut;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class TrainingMatrix {
+
+    // The reduced training rows, stored column by column in one array so a
+    // pass over a column reads contiguous memory instead of one row object
+    // per row. The value of row i in column d is base[d] plus the unsigned
+    // code at d * capacity + i. Codes are bytes when every column spans fewer
+    // than 256 values, shorts below 65536 and ints otherwise (with a base
+    // of 0); once packed, exactly one of the three is set. A search walks a
+    // column in sorted order, so it still gathers, but from one compact
+    // array that stays in cache rather than from n scattered row objects.
+    // A matrix made by wrap() instead reads its caller's rows in place,
+    // for one-off fits that would not pay back the packing.
+    // Columns may be packed with room for more rows than they hold. A
+    // matrix with rows appended then shares the arrays, writing the new
+    // codes past the old rows, which no earlier matrix reads; only the
+    // matrix whose rows end where the shared arrays are filled up to may
+    // append in place, so appending twice to one matrix still gives two
+    // independent results.
+
+    private final int n;
+    private final int dims;
+
+    // rows each column has room for, and the rows written so far into
+    // the arrays shared with every matrix appended from this one
+    private final int capacity;
+    private final int[] filled;
+    private final int[] base;
+    private final byte[] bytes;
+    private final short[] shorts;
+    private final int[] ints;
+
+    // the caller's rows when wrapped, otherwise null
+    private final int[][] rows;
+
+    // pack reduced rows, each of the same length
+    public TrainingMatrix(int[][] rows) {
+        this(null, rows);
+    }
+
+    private TrainingMatrix(int[][] rows, int dims) {
+        n = rows.length;
+        this.dims = dims;
+        this.rows = rows;
+        capacity = n;
+        filled = null;
+        base = null;
+        bytes = null;
+        shorts = null;
+        ints = null;
+    }
+
+    // a view of rows, each of the same length, read in place without
+    // packing; the rows must not change while the view is in use
+    public static TrainingMatrix wrap(int[][] rows) {
+        if (rows == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        if (rows.length == 0)
+            throw new IllegalArgumentException("no rows");
+        int dims = rows[0] == null ? 0 : rows[0].length;
+        if (dims < 1)
+            throw new IllegalArgumentException("number of columns is invalid");
+        for (int[] row : rows)
+            if (row == null || row.length != dims)
+                throw new IllegalArgumentException("number of columns is invalid");
+        return new TrainingMatrix(rows, dims);
+    }
+
+    // old with its next rows already written to the shared arrays
+    private TrainingMatrix(TrainingMatrix old, int n) {
+        this.n = n;
+        dims = old.dims;
+        capacity = old.capacity;
+        filled = old.filled;
+        rows = null;
+        base = old.base;
+        bytes = old.bytes;
+        shorts = old.shorts;
+        ints = old.ints;
+    }
+
+    // rows of old followed by rows; old may be null
+    private TrainingMatrix(TrainingMatrix old, int[][] rows) {
+        this(old, rows, old == null ? rows.length : old.n + rows.length);
+    }
+
+    // same as above, with room for capacity rows in all
+    private TrainingMatrix(TrainingMatrix old, int[][] rows, long capacity) {
+        if (rows == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        int first = old == null ? 0 : old.n;
+        n = first + rows.length;
+        if (n == 0)
+            throw new IllegalArgumentException("no rows");
+        dims = old != null ? old.dims : rows[0] == null ? 0 : rows[0].length;
+        if (dims < 1)
+            throw new IllegalArgumentException("number of columns is invalid");
+        for (int[] row : rows)
+            if (row == null || row.length != dims)
+                throw new IllegalArgumentException("number of columns is invalid");
+        if ((long) n * dims > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("too many values for one array");
+        this.capacity = (int) Math.min(capacity, Integer.MAX_VALUE / dims);
+        filled = new int[] { n };
+
+        // the range of every column decides the width
+        int[] min = new int[dims];
+        int[] max = new int[dims];
+        for (int d = 0; d < dims; d++) {
+            min[d] = Integer.MAX_VALUE;
+            max[d] = Integer.MIN_VALUE;
+            if (old != null) {
+                min[d] = old.min(d);
+                max[d] = old.max(d);
+            }
+            for (int[] row : rows) {
+                min[d] = Math.min(min[d], row[d]);
+                max[d] = Math.max(max[d], row[d]);
+            }
+        }
+        long span = 0;
+        for (int d = 0; d < dims; d++)
+            span = Math.max(span, (long) max[d] - min[d]);
+
+        this.rows = null;
+        base = span < 65536 ? min : new int[dims];
+        int size = this.capacity * dims;
+        bytes = span < 256 ? new byte[size] : null;
+        shorts = span >= 256 && span < 65536 ? new short[size] : null;
+        ints = span >= 65536 ? new int[size] : null;
+        for (int d = 0; d < dims; d++) {
+            for (int i = 0; i < first; i++)
+                put(d * this.capacity + i, old.get(i, d) - base[d]);
+            for (int j = 0; j < rows.length; j++)
+                put(d * this.capacity + first + j, rows[j][d] - base[d]);
+        }
+    }
+
+    private void put(int p, int code) {
+        if (bytes != null) bytes[p] = (byte) code;
+        else if (shorts != null) shorts[p] = (short) code;
+        else ints[p] = code;
+    }
+
+    // smallest and largest value of column d
+    private int min(int d) {
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < n; i++)
+            min = Math.min(min, get(i, d));
+        return min;
+    }
+
+    private int max(int d) {
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++)
+            max = Math.max(max, get(i, d));
+        return max;
+    }
+
+    // number of rows
+    public int size() {
+        return n;
+    }
+
+    // number of columns
+    public int dimensions() {
+        return dims;
+    }
+
+    // bytes per stored value: 1, 2 or 4
+    public int width() {
+        if (bytes != null) return 1;
+        if (shorts != null) return 2;
+        return 4;
+    }
+
+    // the rows a wrapped matrix reads in place, or null once packed; lets
+    // a hot loop index them directly instead of going through get()
+    int[][] wrapped() {
+        return rows;
+    }
+
+    // value of row i in column d
+    public int get(int i, int d) {
+        int p = d * capacity + i;
+        if (bytes != null) return base[d] + (bytes[p] & 0xFF);
+        if (shorts != null) return base[d] + (shorts[p] & 0xFFFF);
+        if (ints != null) return ints[p];
+        return rows[i][d];
+    }
+
+    // a copy of row i
+    public int[] row(int i) {
+        if (i < 0 || i >= n)
+            throw new IllegalArgumentException("row out of range");
+        int[] row = new int[dims];
+        for (int d = 0; d < dims; d++)
+            row[d] = get(i, d);
+        return row;
+    }
+
+    // This matrix with rows appended; this matrix itself is unchanged.
+    // When the columns have room and every new value fits their codes, the
+    // rows are written in place in O(rows k). Otherwise everything is
+    // repacked (and widened if the new values need it) in O((n + rows) k)
+    // with room for twice the rows, so a run of appends costs O(k) per
+    // row amortized. A wrapped matrix is packed here too.
+    public TrainingMatrix append(int[][] rows) {
+        if (rows == null)
+            throw new IllegalArgumentException("argument cannot be null");
+        for (int[] row : rows)
+            if (row == null || row.length != dims)
+                throw new IllegalArgumentException("number of columns is invalid");
+        int total = n + rows.length;
+        if (this.rows != null || filled[0] != n || total > capacity || !fits(rows))
+            return new TrainingMatrix(this, rows, Math.max(total, 2L * n));
+        for (int d = 0; d < dims; d++)
+            for (int j = 0; j < rows.length; j++)
+                put(d * capacity + n + j, rows[j][d] - base[d]);
+        filled[0] = total;
+        return new TrainingMatrix(this, total);
+    }
+
+    // whether every value of rows has a code at the current width
+    private boolean fits(int[][] rows) {
+        if (ints != null) return true;
+        long limit = bytes != null ? 256 : 65536;
+        for (int[] row : rows)
+            for (int d = 0; d < dims; d++) {
+                long code = (long) row[d] - base[d];
+                if (code < 0 || code >= limit) return false;
+            }
+        return true;
+    }
+
+    // unit testing: pack random rows of the given value range and check
+    // every value
+    // usage: java TrainingMatrix n k range
+    public static void main(String[] args) {
+        int n = Integer.parseInt(args[0]);
+        int k = Integer.parseInt(args[1]);
+        int range = Integer.parseInt(args[2]);
+        Random random = new Random(0);
+        int[][] rows = new int[n][k];
+        for (int i = 0; i < n; i++)
+            for (int d = 0; d < k; d++)
+                rows[i][d] = 1000 + random.nextInt(range);
+        // the first append repacks with room for all n rows, the second
+        // fills them in place
+        TrainingMatrix half = new TrainingMatrix(Arrays.copyOf(rows, (n + 1) / 2));
+        TrainingMatrix most = half.append(Arrays.copyOfRange(rows, (n + 1) / 2, 3 * n / 4));
+        TrainingMatrix matrix = most.append(Arrays.copyOfRange(rows, 3 * n / 4, n));
+        int wrong = 0;
+        for (int i = 0; i < n; i++)
+            for (int d = 0; d < k; d++)
+                if (matrix.get(i, d) != rows[i][d]) wrong++;
+
+        // a second append to most must not overwrite the rows of the first
+        most.append(Arrays.copyOf(rows, n - 3 * n / 4));
+        for (int i = 0; i < n; i++)
+            for (int d = 0; d < k; d++)
+                if (matrix.get(i, d) != rows[i][d]) wrong++;
+        StdOut.println("width " + matrix.width() + ", " + wrong + " wrong values");
+    }
+}
@@ -1,10 +1,9 @@
 import edu.princeton.cs.algs4.In;
-import edu.princeton.cs.algs4.RedBlackBST;
 import edu.princeton.cs.algs4.StdOut;
 
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.TreeMap;
+import java.util.stream.IntStream;
 
 public class WeakLearner {
 
@@ -19,18 +18,50 @@ public class WeakLearner {
     // Dimensionality of the input data.
     private int dp;
 
-
-    // Inner class to pair weight and label for easier management of data points.
-    private static class Pairing {
-        // Weight of the data point.
-        double weight;
-        // Label of the data point.
-        int label;
-
-        // Constructor for Pair.
-        private Pairing(double weight, int label) {
-            this.weight = weight;
-            this.label = label;
+    // Position of the split: the last sorted row (exact fit) or the last
+    // bin (binned fit) on the signP side.
+    private int cut;
+
+    // Rows of the training set the stump gets wrong, one bit per row.
+    private long[] misclassified;
+
+    // Total weight of those rows.
+    private double weightedError;
+
+    // split search time, and the stump each search settled on
+    private static final Metrics.Timer SEARCH_TIME = Metrics.global().timer(
+            "weak_learner_split_search", "Best split search over all dimensions");
+    private static final Metrics.Gauge LAST_DIMENSION = Metrics.global().gauge(
+            "weak_learner_dimension", "Dimension of the last fitted stump");
+    private static final Metrics.Gauge LAST_ERROR = Metrics.global().gauge(
+            "weak_learner_weighted_error", "Weighted error of the last fitted stump");
+
+
+    // Best split found in one dimension: the best score for each sign and
+    // the largest value reaching it.
+    private static class Split {
+        double good0 = Double.NEGATIVE_INFINITY;
+        double good1 = Double.NEGATIVE_INFINITY;
+        int value0;
+        int value1;
+        int cut0;
+        int cut1;
+
+        // offer the scores of splitting at threshold, found at sorted
+        // position (or bin) cut; Double.compare keeps the ordering the old
+        // score trees used, so ties still go to the largest value
+        private void offer(double averageBlackWeight, double averageRedWeight,
+                           int threshold, int cut) {
+            if (Double.compare(averageBlackWeight, good0) >= 0) {
+                good0 = averageBlackWeight;
+                value0 = threshold;
+                cut0 = cut;
+            }
+            if (Double.compare(averageRedWeight, good1) >= 0) {
+                good1 = averageRedWeight;
+                value1 = threshold;
+                cut1 = cut;
+            }
         }
     }
 
@@ -40,15 +71,139 @@ public class WeakLearner {
     // labels:  Array of labels corresponding to each input vector.
     // throw IllegalArgumentException if any argument is null or dimensions mismatch.
     public WeakLearner(int[][] input, double[] weights, int[] labels) {
+        this(input, weights, labels, sortColumns(input));
+    }
+
+    // Same as above, but reuses the column orders built by sortColumns(input)
+    // so a boosting model only has to sort its training set once.
+    public WeakLearner(int[][] input, double[] weights, int[] labels, int[][] order) {
+        this(input, weights, labels, order, false);
+    }
+
+    // With parallel set, the dimensions are searched concurrently on the
+    // common pool; the result is identical to the sequential search.
+    public WeakLearner(int[][] input, double[] weights, int[] labels, int[][] order,
+                       boolean parallel) {
+        this(matrixOf(input, weights, labels), weights, labels, order, parallel);
+    }
+
+    // Same as above over a training matrix. The int[][] constructors wrap
+    // their input in place; a boosting model packs its rows once and every
+    // round reads the packed columns.
+    public WeakLearner(TrainingMatrix input, double[] weights, int[] labels, int[][] order,
+                       boolean parallel) {
         validateInput(input, weights, labels);
-        dp = input[0].length;
-        calculateWeights(input, weights, labels);
+        dp = input.dimensions();
+        if (order == null || order.length != dp)
+            throw new IllegalArgumentException("Wrong argums");
+        calculateWeights(input, weights, labels, order, parallel);
     }
 
-    // Calculates weights for each dimension and predicts the best split.
-    private void calculateWeights(int[][] input, double[] weights, int[] labels) {
+    // Searches splits over a subset of the rows only: row rows[j] (rows
+    // increasing) counts with weight rowWeights[j]. The subset's column
+    // orders are sorted here in O(k s log s) for s rows or, when order
+    // (the full column orders, may be null) is given and scanning it is
+    // cheaper, filtered out of it in O(k n). The stump is then applied to
+    // every row, so misclassified() and weightedError() still cover the
+    // whole training set under the full weights.
+    public WeakLearner(int[][] input, double[] weights, int[] labels, int[][] order,
+                       int[] rows, double[] rowWeights, boolean parallel) {
+        this(matrixOf(input, weights, labels), weights, labels, order, rows, rowWeights,
+             parallel);
+    }
 
+    // Same as above over a column-major training matrix.
+    public WeakLearner(TrainingMatrix input, double[] weights, int[] labels, int[][] order,
+                       int[] rows, double[] rowWeights, boolean parallel) {
+        validateInput(input, weights, labels);
+        validateSubset(rows, rowWeights, input.size());
+        dp = input.dimensions();
+        if (order != null && order.length != dp)
+            throw new IllegalArgumentException("Wrong argums");
+        calculateWeights(input, weights, labels, order, rows, rowWeights, parallel);
+    }
+
+    // Fits on quantized columns: each dimension is scored from a weighted
+    // label histogram over its bins instead of over every distinct value.
+    public WeakLearner(FeatureBins bins, double[] weights, int[] labels) {
+        this(bins, weights, labels, false);
+    }
+
+    // Same as above, optionally searching the dimensions in parallel.
+    public WeakLearner(FeatureBins bins, double[] weights, int[] labels,
+                       boolean parallel) {
+        if (bins == null || weights == null || labels == null)
+            throw new IllegalArgumentException("argums not null");
+        int nPoints = bins.size();
+        if (weights.length != nPoints || labels.length != nPoints)
+            throw new IllegalArgumentException("Wrong argums");
+        dp = bins.dimensions();
+        calculateWeights(bins, weights, labels, null, weights, parallel);
+    }
+
+    // Same as above over a subset of the rows, as in the exact subset fit;
+    // the histograms cost O(k s).
+    public WeakLearner(FeatureBins bins, double[] weights, int[] labels, int[] rows,
+                       double[] rowWeights, boolean parallel) {
+        if (bins == null || weights == null || labels == null)
+            throw new IllegalArgumentException("argums not null");
+        int nPoints = bins.size();
+        if (weights.length != nPoints || labels.length != nPoints)
+            throw new IllegalArgumentException("Wrong argums");
+        validateSubset(rows, rowWeights, nPoints);
+        dp = bins.dimensions();
+        calculateWeights(bins, weights, labels, rows, rowWeights, parallel);
+    }
+
+    // Sorts the row indices of every dimension by value, ties broken by row
+    // index. Each key packs (value, row) into one long so a primitive sort
+    // does the work without boxing.
+    public static int[][] sortColumns(int[][] input) {
+        if (input == null)
+            throw new IllegalArgumentException("argums not null");
         int numPoints = input.length;
+        int dims = input[0].length;
+        int[][] order = new int[dims][numPoints];
+        long[] keys = new long[numPoints];
+        for (int k = 0; k < dims; k++) {
+            for (int i = 0; i < numPoints; i++)
+                keys[i] = ((long) input[i][k] << 32) | i;
+            Arrays.sort(keys);
+            for (int i = 0; i < numPoints; i++)
+                order[k][i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    // Same as above for a training matrix; each column is read in one
+    // contiguous pass.
+    public static int[][] sortColumns(TrainingMatrix input) {
+        if (input == null)
+            throw new IllegalArgumentException("argums not null");
+        return sortColumns(input, null);
+    }
+
+    // the column orders of rows (all rows when null), as positions in rows
+    private static int[][] sortColumns(TrainingMatrix input, int[] rows) {
+        int numPoints = rows == null ? input.size() : rows.length;
+        int dims = input.dimensions();
+        int[][] order = new int[dims][numPoints];
+        long[] keys = new long[numPoints];
+        for (int k = 0; k < dims; k++) {
+            for (int j = 0; j < numPoints; j++)
+                keys[j] = ((long) input.get(rows == null ? j : rows[j], k) << 32) | j;
+            Arrays.sort(keys);
+            for (int j = 0; j < numPoints; j++)
+                order[k][j] = (int) keys[j];
+        }
+        return order;
+    }
+
+    // Calculates weights for each dimension and predicts the best split.
+    private void calculateWeights(TrainingMatrix input, double[] weights, int[] labels,
+                                  int[][] order, boolean parallel) {
+
+        int numPoints = input.size();
         double weightSum = 0;
         double redWeightSum = 0;
 
@@ -59,104 +214,301 @@ public class WeakLearner {
             weightSum += weights[i];
         }
 
-        double blackWeightSum = (weightSum - redWeightSum);
-        double bestWeight = 0;
+        double total = weightSum;
+        double red = redWeightSum;
+        long start = System.nanoTime();
+        long allocated = Metrics.allocatedBytes();
+        Split[] splits = new Split[dp];
+        IntStream dims = IntStream.range(0, dp);
+        if (parallel) dims = dims.parallel();
+        dims.forEach(k -> splits[k] =
+                searchDimension(input, null, weights, labels, order[k], k, total, red));
+
+        pickBest(splits);
+        SEARCH_TIME.record(System.nanoTime() - start,
+                           allocated < 0 ? -1 : Metrics.allocatedBytes() - allocated);
+
+        // rows sorted at or before the cut are on the signP side
+        misclassified = new long[(numPoints + 63) >>> 6];
+        int[] rows = order[dimension];
+        for (int p = 0; p < numPoints; p++) {
+            int i = rows[p];
+            int predicted = p <= cut ? signP : 1 - signP;
+            if (predicted != labels[i]) miss(i, weights[i]);
+        }
+        LAST_DIMENSION.set(dimension);
+        LAST_ERROR.set(weightedError / total);
+    }
 
-        for (int k = 0; k < dp; k++) {
+    // Split search over the rows of a subset, then the stump is applied to
+    // every row to build the misclassification set.
+    private void calculateWeights(TrainingMatrix input, double[] weights, int[] labels,
+                                  int[][] fullOrder, int[] rows, double[] rowWeights,
+                                  boolean parallel) {
 
-            // Create a map to store weights and labels for
-            // each unique value in the current dimension.
-            TreeMap<Integer, LinkedList<Pairing>> tableSet =
-                    createTableSet(input, weights, labels, k);
+        // labels of the subset rows; their values are read through rows
+        int s = rows.length;
+        int numPoints = input.size();
+        int[] subLabels = new int[s];
+        double weightSum = 0;
+        double redWeightSum = 0;
+        for (int j = 0; j < s; j++) {
+            subLabels[j] = labels[rows[j]];
+            if (subLabels[j] == 1)
+                redWeightSum += rowWeights[j];
+            weightSum += rowWeights[j];
+        }
 
-            double correctBlackWeight = 0;
-            double correctRedWeight = 0;
+        long start = System.nanoTime();
+        long allocated = Metrics.allocatedBytes();
+        // sorting s rows costs about s log2 s steps, filtering n
+        int[][] order;
+        int logS = 32 - Integer.numberOfLeadingZeros(s);
+        if (fullOrder != null && (long) s * logS > numPoints)
+            order = filterColumns(fullOrder, rows, numPoints);
+        else
+            order = sortColumns(input, rows);
+        double total = weightSum;
+        double red = redWeightSum;
+        Split[] splits = new Split[dp];
+        IntStream dims = IntStream.range(0, dp);
+        if (parallel) dims = dims.parallel();
+        dims.forEach(k -> splits[k] =
+                searchDimension(input, rows, rowWeights, subLabels, order[k], k, total, red));
+
+        pickBest(splits);
+        SEARCH_TIME.record(System.nanoTime() - start,
+                           allocated < 0 ? -1 : Metrics.allocatedBytes() - allocated);
+
+        // the cut is a position in the subset order, so compare values
+        double fullWeight = 0;
+        misclassified = new long[(numPoints + 63) >>> 6];
+        for (int i = 0; i < numPoints; i++) {
+            fullWeight += weights[i];
+            int predicted = input.get(i, dimension) <= value ? signP : 1 - signP;
+            if (predicted != labels[i]) miss(i, weights[i]);
+        }
+        LAST_DIMENSION.set(dimension);
+        LAST_ERROR.set(weightedError / fullWeight);
+    }
 
-            RedBlackBST<Double, Integer> redScore = new RedBlackBST<>();
-            RedBlackBST<Double, Integer> blackScore = new RedBlackBST<>();
+    // The full column orders restricted to the rows of a subset (rows
+    // increasing), renumbered by position in rows.
+    private static int[][] filterColumns(int[][] order, int[] rows, int numPoints) {
+        // membership bitset, and the number of members before each word
+        int words = (numPoints + 63) >>> 6;
+        long[] member = new long[words];
+        for (int i : rows)
+            member[i >>> 6] |= 1L << i;
+        int[] rank = new int[words];
+        for (int w = 1; w < words; w++)
+            rank[w] = rank[w - 1] + Long.bitCount(member[w - 1]);
+
+        int s = rows.length;
+        int[][] filtered = new int[order.length][s];
+        for (int k = 0; k < order.length; k++) {
+            int[] column = order[k];
+            int[] out = filtered[k];
+            int q = 0;
+            for (int p = 0; p < numPoints; p++) {
+                int i = column[p];
+                long word = member[i >>> 6];
+                if ((word & (1L << i)) != 0)
+                    out[q++] = rank[i >>> 6] + Long.bitCount(word & ((1L << i) - 1));
+            }
+        }
+        return filtered;
+    }
 
-            // Iterate over each unique value and calculate the weighted
-            // average for each label.
-            for (int tableInput : tableSet.keySet()) {
+    // Walk the points of dimension k in increasing value and score a split
+    // once every point sharing the current value has been added. Point j
+    // is row rowOf[j] of input, or row j when rowOf is null.
+    private static Split searchDimension(TrainingMatrix input, int[] rowOf,
+                                         double[] weights, int[] labels,
+                                         int[] rows, int k, double weightSum,
+                                         double redWeightSum) {
+        double blackWeightSum = (weightSum - redWeightSum);
+        double correctBlackWeight = 0;
+        double correctRedWeight = 0;
+        Split split = new Split();
+
+        // each value is read once, as the next point's; the points come in
+        // sorted order, so the reads gather across column k
+        int numPoints = rows.length;
+        int[][] wrapped = input.wrapped();
+        int next = numPoints == 0 ? 0 : input.get(rowOf == null ? rows[0] : rowOf[rows[0]], k);
+        for (int p = 0; p < numPoints; p++) {
+            int i = rows[p];
+            if (labels[i] == 0) correctBlackWeight += weights[i];
+            else if (labels[i] == 1) correctRedWeight += weights[i];
+            else throw new
+                        IllegalArgumentException("label wrong");
+
+            int tableInput = next;
+            if (p + 1 < numPoints) {
+                int j = rows[p + 1];
+                int row = rowOf == null ? j : rowOf[j];
+                next = wrapped != null ? wrapped[row][k] : input.get(row, k);
+                if (next == tableInput)
+                    continue;
+            }
 
-                List<Pairing> pointsLabelsWeights = tableSet.get(tableInput);
-                for (Pairing pair : pointsLabelsWeights) {
-                    if (pair.label == 0) correctBlackWeight += pair.weight;
-                    else if (pair.label == 1) correctRedWeight += pair.weight;
-                    else throw new
-                                IllegalArgumentException("label wrong");
-                }
+            double averageBlackWeight =
+                    (correctBlackWeight + (redWeightSum - correctRedWeight))
+                            / weightSum;
 
-                // Calculate and store the weighted averages
-                // for each label in RedBlackBST.
-                double averageBlackWeight =
-                        (correctBlackWeight + (redWeightSum - correctRedWeight))
-                                / weightSum;
+            double averageRedWeight = (correctRedWeight +
+                    (blackWeightSum - correctBlackWeight))
+                    / weightSum;
 
-                double averageRedWeight = (correctRedWeight +
-                        (blackWeightSum - correctBlackWeight))
-                        / weightSum;
+            split.offer(averageBlackWeight, averageRedWeight, tableInput, p);
+        }
+        return split;
+    }
 
-                redScore.put(averageBlackWeight, tableInput);
-                blackScore.put(averageRedWeight, tableInput);
-            }
+    // Same search over the bins of each dimension. A threshold is the
+    // largest training value in a bin, so predict() needs no bin lookup.
+    // With rows set, only those rows (weighted by rowWeights) are
+    // histogrammed; otherwise rowWeights is weights.
+    private void calculateWeights(FeatureBins bins, double[] weights, int[] labels,
+                                  int[] rows, double[] rowWeights, boolean parallel) {
 
-            // Find the maximum percentage of correctly
-            // classified samples for each label.
-            double good1 = blackScore.max();
-            double good0 = redScore.max();
+        int numPoints = bins.size();
+        double weightSum = 0;
+        double redWeightSum = 0;
+
+        int searched = rows == null ? numPoints : rows.length;
+        for (int j = 0; j < searched; j++) {
+            int i = rows == null ? j : rows[j];
+            if (labels[i] == 1)
+                redWeightSum += rowWeights[j];
+            weightSum += rowWeights[j];
+        }
+
+        double total = weightSum;
+        double red = redWeightSum;
+        long start = System.nanoTime();
+        long allocated = Metrics.allocatedBytes();
+        Split[] splits = new Split[dp];
+        IntStream dims = IntStream.range(0, dp);
+        if (parallel) dims = dims.parallel();
+        dims.forEach(k -> splits[k] =
+                searchBins(bins, rows, rowWeights, labels, k, total, red));
+
+        pickBest(splits);
+        SEARCH_TIME.record(System.nanoTime() - start,
+                           allocated < 0 ? -1 : Metrics.allocatedBytes() - allocated);
+
+        // rows binned at or before the cut are on the signP side
+        double fullWeight = 0;
+        misclassified = new long[(numPoints + 63) >>> 6];
+        for (int i = 0; i < numPoints; i++) {
+            fullWeight += weights[i];
+            int predicted = bins.binOf(dimension, i) <= cut ? signP : 1 - signP;
+            if (predicted != labels[i]) miss(i, weights[i]);
+        }
+        LAST_DIMENSION.set(dimension);
+        LAST_ERROR.set(weightedError / fullWeight);
+    }
+
+    // record row i, of weight w, as misclassified
+    private void miss(int i, double w) {
+        misclassified[i >>> 6] |= 1L << i;
+        weightedError += w;
+    }
+
+    // Score the split after every bin of dimension k, over all rows or,
+    // with rows set, over that subset.
+    private static Split searchBins(FeatureBins bins, int[] rows, double[] weights,
+                                    int[] labels, int k, double weightSum,
+                                    double redWeightSum) {
+        double blackWeightSum = (weightSum - redWeightSum);
+        int nBins = bins.binCount(k);
+        double[] blackHist = new double[nBins];
+        double[] redHist = new double[nBins];
+        if (rows == null)
+            bins.histogram(k, weights, labels, blackHist, redHist);
+        else
+            bins.histogram(k, rows, weights, labels, blackHist, redHist);
+
+        double correctBlackWeight = 0;
+        double correctRedWeight = 0;
+        Split split = new Split();
+        for (int b = 0; b < nBins; b++) {
+            correctBlackWeight += blackHist[b];
+            correctRedWeight += redHist[b];
+
+            double averageBlackWeight =
+                    (correctBlackWeight + (redWeightSum - correctRedWeight))
+                            / weightSum;
+
+            double averageRedWeight = (correctRedWeight +
+                    (blackWeightSum - correctBlackWeight))
+                    / weightSum;
+
+            split.offer(averageBlackWeight, averageRedWeight, bins.upperValue(k, b), b);
+        }
+        return split;
+    }
 
-            // Update prediction parameters if a new maximum percentage is found.
-            if (good1 >= bestWeight) {
+    // Update prediction parameters whenever a dimension reaches a new
+    // maximum percentage. Dimensions are merged in increasing order, so
+    // ties go to the later one no matter how they were searched.
+    private void pickBest(Split[] splits) {
+        double bestWeight = 0;
+        for (int k = 0; k < dp; k++) {
+            Split split = splits[k];
+            if (split.good1 >= bestWeight) {
                 signP = 1;
-                bestWeight = good1;
-                value = blackScore.get(good1);
+                bestWeight = split.good1;
+                value = split.value1;
+                cut = split.cut1;
                 this.dimension = k;
             }
-            if (good0 >= bestWeight) {
+            if (split.good0 >= bestWeight) {
                 signP = 0;
-                bestWeight = good0;
-                value = redScore.get(good0);
+                bestWeight = split.good0;
+                value = split.value0;
+                cut = split.cut0;
                 this.dimension = k;
             }
         }
     }
 
-    // Create a map to store weights and labels for each unique
-    // value in the current dimension.
-    private TreeMap<Integer, LinkedList<Pairing>>
-    createTableSet(int[][] input, double[] weights,
-                   int[] labels, int k) {
-
-
+    // Validate input data and throw exceptions if invalid.
+    private static void validateInput(int[][] input, double[] weights, int[] labels) {
+        if (input == null || weights == null || labels == null)
+            throw new IllegalArgumentException("argums not null");
         int nPoints = input.length;
-        TreeMap<Integer, LinkedList<Pairing>> tableSet = new TreeMap<>();
-        for (int i = 0; i < nPoints; ++i) {
-            int transaction = input[i][k];
-            List<Pairing> indexTransaction = tableSet.get(transaction);
-
-            if (indexTransaction == null) {
-
-                LinkedList<Pairing> nullTransaction = new LinkedList<>();
-                Pairing pair = new Pairing(weights[i], labels[i]);
-                nullTransaction.add(pair);
-                tableSet.put(input[i][k], nullTransaction);
-                continue;
-            }
-            indexTransaction.add(new Pairing(weights[i], labels[i]));
-        }
-        return tableSet;
+        if (weights.length != nPoints || labels.length != nPoints)
+            throw new IllegalArgumentException("Wrong argums");
     }
 
-    // Validate input data and throw exceptions if invalid.
-    private void validateInput(int[][] input, double[] weights, int[] labels) {
+    private static void validateInput(TrainingMatrix input, double[] weights, int[] labels) {
         if (input == null || weights == null || labels == null)
             throw new IllegalArgumentException("argums not null");
-        int nPoints = input.length;
+        int nPoints = input.size();
         if (weights.length != nPoints || labels.length != nPoints)
             throw new IllegalArgumentException("Wrong argums");
     }
 
+    // the rows of input packed column by column, once checked
+    private static TrainingMatrix matrixOf(int[][] input, double[] weights, int[] labels) {
+        validateInput(input, weights, labels);
+        return TrainingMatrix.wrap(input);
+    }
+
+    // a subset needs at least one row, each a valid index, with a weight
+    private static void validateSubset(int[] rows, double[] rowWeights, int nPoints) {
+        if (rows == null || rowWeights == null)
+            throw new IllegalArgumentException("argums not null");
+        if (rows.length == 0 || rowWeights.length != rows.length)
+            throw new IllegalArgumentException("Wrong argums");
+        for (int i : rows)
+            if (i < 0 || i >= nPoints)
+                throw new IllegalArgumentException("Wrong argums");
+    }
+
     /*
      Predicts the label for a given sample vector.
      sample: The sample vector to predict.
@@ -206,6 +558,115 @@ public class WeakLearner {
         return signP;
     }
 
+    // Returns the training rows this stump misclassifies as a bitset:
+    // row i is bit (i % 64) of word i / 64. The array is shared, not copied.
+    public long[] misclassified() {
+        return misclassified;
+    }
+
+    // Extends the misclassification set to reduced rows appended to the
+    // training set at index first onward, as when a model is refreshed
+    // with new rows. The set is extended in a copy, so an array returned
+    // by misclassified() before is left as it was. weightedError() still
+    // reports the fit's own error.
+    void extend(int[][] rows, int[] labels, int first) {
+        int total = first + rows.length;
+        misclassified = Arrays.copyOf(misclassified,
+                                      Math.max(misclassified.length, (total + 63) >>> 6));
+        for (int j = 0; j < rows.length; j++) {
+            int prediction = rows[j][dimension] <= value ? signP : 1 - signP;
+            if (prediction != labels[j]) {
+                int i = first + j;
+                misclassified[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+    // Turns the stump around: the other label on each side of the split,
+    // so the misclassified rows among the first numPoints become exactly
+    // the ones it got right. The error is re-summed from weights. For a
+    // stump fitted on a subset that is worse than chance on every row.
+    void flip(double[] weights, int numPoints) {
+        signP = flipSign(signP);
+        weightedError = 0;
+        for (int i = 0; i < numPoints; i++) {
+            misclassified[i >>> 6] ^= 1L << i;
+            if ((misclassified[i >>> 6] & (1L << i)) != 0)
+                weightedError += weights[i];
+        }
+    }
+
+    // Returns the total training weight of the misclassified rows.
+    public double weightedError() {
+        return weightedError;
+    }
+
+    // Fraction of the training rows the majority vote of learners gets
+    // wrong, from their misclassification sets alone: a learner votes 1 on
+    // row i exactly when it is right and labels[i] == 1, or wrong and
+    // labels[i] == 0. Ties vote 0, as in prediction.
+    public static double ensembleError(List<WeakLearner> learners, int[] labels) {
+        int nPoints = labels.length;
+        int rounds = learners.size();
+        if (nPoints == 0) return 0.0;
+        int[] misses = new int[nPoints];
+        for (WeakLearner learner : learners) {
+            long[] missed = learner.misclassified();
+            if (missed.length != (nPoints + 63) >>> 6)
+                throw new IllegalArgumentException("Wrong argums");
+            for (int w = 0; w < missed.length; w++) {
+                long bits = missed[w];
+                while (bits != 0) {
+                    misses[(w << 6) + Long.numberOfTrailingZeros(bits)]++;
+                    bits &= bits - 1;
+                }
+            }
+        }
+        int errors = 0;
+        for (int i = 0; i < nPoints; i++) {
+            int ones = labels[i] == 1 ? rounds - misses[i] : misses[i];
+            int predicted = 2 * ones > rounds ? 1 : 0;
+            if (predicted != labels[i]) errors++;
+        }
+        return (double) errors / nPoints;
+    }
+
+    // Same as above for a weighted vote, learner t voting with weight
+    // alphas[t]: the rows each learner misses add its weight against the
+    // true label, and a row is wrong when that outweighs the rest.
+    public static double ensembleError(List<WeakLearner> learners, double[] alphas,
+                                       int[] labels) {
+        int nPoints = labels.length;
+        int rounds = learners.size();
+        if (alphas.length < rounds)
+            throw new IllegalArgumentException("Wrong argums");
+        if (nPoints == 0) return 0.0;
+        double[] against = new double[nPoints];
+        double total = 0;
+        for (int t = 0; t < rounds; t++) {
+            long[] missed = learners.get(t).misclassified();
+            if (missed.length != (nPoints + 63) >>> 6)
+                throw new IllegalArgumentException("Wrong argums");
+            double alpha = alphas[t];
+            total += alpha;
+            for (int w = 0; w < missed.length; w++) {
+                long bits = missed[w];
+                while (bits != 0) {
+                    against[(w << 6) + Long.numberOfTrailingZeros(bits)] += alpha;
+                    bits &= bits - 1;
+                }
+            }
+        }
+        int errors = 0;
+        for (int i = 0; i < nPoints; i++) {
+            // margin towards label 1
+            double margin = labels[i] == 1 ? total - 2 * against[i] : 2 * against[i] - total;
+            int predicted = margin > 0 ? 1 : 0;
+            if (predicted != labels[i]) errors++;
+        }
+        return (double) errors / nPoints;
+    }
+
     // Main method for testing.
     public static void main(String[] args) {
         In datafile = new In(args[0]);